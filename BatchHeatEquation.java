@@ -0,0 +1,407 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Solves the heat equation for a batch of initial conditions which share the same diffusivity and degree, as used
+ * when tens of thousands of initial conditions are solved in one job.
+ *
+ * Every initial condition is transformed once when the batch is made, with the rows split across the pool of the
+ * options. Each task transforms its rows a block at a time, storing the coefficients of the block row by row and then
+ * copying them into the batch one degree at a time, so each degree is written as one contiguous run. The coefficients are then stored in structure of arrays layout: all the a0 values together, then the a_1
+ * of every row, then the a_2 of every row and so on, followed by the b_j in the same way. The decay factor of a
+ * degree is the same for every row, so each is calculated once per time and applied to a contiguous run of the
+ * batch, and evaluating every row at a point adds one contiguous run per degree.
+ *
+ * A BatchHeatEquation object only reads its coefficients after it is made, so it can be used by several threads.
+ *
+ * @see HeatEquation
+ */
+public class BatchHeatEquation
+{
+    /**
+     * Receives the solution of each row in turn.
+     */
+    public interface RowConsumer
+    {
+        /**
+         * Receives the solution of one row.
+         *
+         * @param row the index of the initial condition.
+         * @param solution the solution for that initial condition.
+         */
+        void accept (int row, FourierPolynomial solution);
+    }
+
+    /**
+     * The number of rows transformed by each task, and the number evaluated by each task at a point.
+     */
+    private static final int ROW_GRAIN = 16;
+    private static final int EVALUATION_GRAIN = 4096;
+
+    /**
+     * Diffusivity of the medium.
+     */
+    final double alpha;
+
+    /**
+     * Degree of the resulting Fourier polynomials.
+     */
+    final int n;
+
+    /**
+     * The number of initial conditions.
+     */
+    final int rows;
+
+    /**
+     * The pool used, or null to use the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * a0 of each row, and a_j and b_j of row r at index (j-1)*rows + r.
+     */
+    final double[] a0;
+    final double[] aj;
+    final double[] bj;
+
+    /**
+     * Constructor for the BatchHeatEquation class which transforms a block of initial conditions.
+     *
+     * @param diffusivity the diffusivity α.
+     * @param initialConditions the 2π-periodic initial condition of each row.
+     * @param degree the degree of the Fourier polynomials.
+     * @param options the number of subintervals and the pool to use, and where the number of evaluations is recorded.
+     *                It must not be null; new TransformOptions() gives the defaults.
+     * @throws IllegalArgumentException if diffusivity is not greater than zero.
+     * @throws IllegalArgumentException if degree is negative.
+     */
+    public BatchHeatEquation (double diffusivity, final RealFunction[] initialConditions, int degree, TransformOptions options)
+    {
+        this(diffusivity, initialConditions.length, degree, options);
+        final int subInt = options.getSubintervals();
+        final double[] nodes = options.nodes(subInt);
+        FourierMetrics metrics = FourierMetrics.begin("BatchHeatEquation.transform");
+        try
+        {
+            Parallel.forRange(pool, 0, rows, ROW_GRAIN, new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    RowTransform transform = new RowTransform(subInt);
+                    for (int start=from; start<to; start+=ROW_GRAIN)
+                    {
+                        int count = Math.min(ROW_GRAIN, to-start);
+                        for (int k=0; k<count; k++)
+                        {
+                            RealFunction g = initialConditions[start+k];
+                            FourierTransformer.sample(g, transform.samples, subInt, null, g instanceof BatchRealFunction ? nodes : null);
+                            transform.transform(start, k);
+                        }
+                        transform.store(start, count);
+                    }
+                }
+            });
+            options.setEvaluationCount((long) rows*(subInt+1));
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end((long) rows*(subInt+1));
+            }
+        }
+    }
+
+    /**
+     * Constructor for the BatchHeatEquation class which transforms a block of initial conditions already sampled.
+     *
+     * @param diffusivity the diffusivity α.
+     * @param samples the values g(2πi/subInt) for 0 <= i <= subInt of each row in turn, so row r starts at index
+     *                r*(subInt+1), where subInt is the number of subintervals of the options.
+     * @param degree the degree of the Fourier polynomials.
+     * @param options the number of subintervals and the pool to use, and where the number of evaluations is recorded.
+     *                It must not be null; new TransformOptions() gives the defaults.
+     * @throws IllegalArgumentException if diffusivity is not greater than zero or degree is negative.
+     * @throws IllegalArgumentException if the length of samples is not a multiple of subInt+1.
+     */
+    public BatchHeatEquation (double diffusivity, final double[] samples, int degree, TransformOptions options)
+    {
+        this(diffusivity, rowCount(samples.length, options.getSubintervals()), degree, options);
+        final int subInt = options.getSubintervals();
+        FourierMetrics metrics = FourierMetrics.begin("BatchHeatEquation.transform");
+        try
+        {
+            Parallel.forRange(pool, 0, rows, ROW_GRAIN, new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    RowTransform transform = new RowTransform(subInt);
+                    for (int start=from; start<to; start+=ROW_GRAIN)
+                    {
+                        int count = Math.min(ROW_GRAIN, to-start);
+                        for (int k=0; k<count; k++)
+                        {
+                            int first = (start+k)*(subInt+1);
+                            System.arraycopy(samples, first, transform.samples, 0, subInt);
+                            // The start and end points share the first entry with half weight each.
+                            transform.samples[0] = (samples[first] + samples[first+subInt])/2.0;
+                            transform.transform(start, k);
+                        }
+                        transform.store(start, count);
+                    }
+                }
+            });
+            // The function was sampled by the caller, so none of its values were found here.
+            options.setEvaluationCount(0);
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+
+    /**
+     * Sets up the fields and allocates the coefficients.
+     */
+    private BatchHeatEquation (double diffusivity, int rowCount, int degree, TransformOptions options)
+    {
+        if (diffusivity <= 0)
+        {
+            throw new java.lang.IllegalArgumentException("alpha must be greater than zero");
+        }
+        alpha = diffusivity;
+
+        if (degree < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        n = degree;
+        rows = rowCount;
+        pool = options.getPool();
+        if ((long) n*rows > Integer.MAX_VALUE - 8)
+        {
+            throw new java.lang.IllegalArgumentException("the batch is too large");
+        }
+        a0 = new double[rows];
+        aj = new double[n*rows];
+        bj = new double[n*rows];
+    }
+
+    /**
+     * Returns the number of rows in an array of samples.
+     */
+    private static int rowCount (int length, int subInt)
+    {
+        if (length % (subInt+1) != 0)
+        {
+            throw new java.lang.IllegalArgumentException("each row must have subInt+1 samples");
+        }
+        return length/(subInt+1);
+    }
+
+    /**
+     * The buffers used by one task to transform rows, holding the coefficients of a block of up to ROW_GRAIN rows with
+     * the a_j of row k at index k*n + j-1.
+     */
+    private class RowTransform
+    {
+        final int subInt;
+        final double[] samples;
+        final double[] re;
+        final double[] im;
+        final RealFFT fft;
+        final double[] blockA;
+        final double[] blockB;
+
+        RowTransform (int subInt)
+        {
+            this.subInt = subInt;
+            samples = new double[subInt];
+            re = new double[subInt/2+1];
+            im = new double[subInt/2+1];
+            fft = TableCache.realFFT(subInt);
+            blockA = new double[ROW_GRAIN*n];
+            blockB = new double[ROW_GRAIN*n];
+        }
+
+        /**
+         * Transforms the samples and stores the coefficients as row k of the block starting at row start.
+         */
+        void transform (int start, int k)
+        {
+            fft.forward(samples, re, im);
+            a0[start+k] = FourierTransformer.coefficients(re, im, subInt, n, blockA, blockB, k*n);
+        }
+
+        /**
+         * Copies the coefficients of the first count rows of the block into the batch from row start.
+         */
+        void store (int start, int count)
+        {
+            for (int j=0; j<n; j++)
+            {
+                int column = j*rows + start;
+                for (int k=0; k<count; k++)
+                {
+                    aj[column + k] = blockA[k*n + j];
+                    bj[column + k] = blockB[k*n + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of initial conditions.
+     *
+     * @return the number of rows.
+     */
+    public int getRows ()
+    {
+        return rows;
+    }
+
+    /**
+     * Returns the decay factors exp(-αj²t) for 1 <= j <= n, stored at index j-1, shared by every row.
+     */
+    private double[] decayFactors (double t)
+    {
+        if (t < 0)
+        {
+            throw new java.lang.IllegalArgumentException("t must be non-negative");
+        }
+        return TableCache.decay(alpha, n, t);
+    }
+
+    /**
+     * Calculates the coefficients of every solution at time t as one matrix in the same layout as the batch: the a0
+     * of each row at index r, a_j of row r at j*rows + r and b_j of row r at (n+j)*rows + r.
+     *
+     * @param t time passed.
+     * @param out array of at least (2n+1)*rows values to store the coefficients in.
+     * @throws IllegalArgumentException if t is negative.
+     */
+    public void getSolution (double t, final double[] out)
+    {
+        final double[] factors = decayFactors(t);
+        FourierMetrics metrics = FourierMetrics.begin("BatchHeatEquation.getSolution");
+        try
+        {
+            System.arraycopy(a0, 0, out, 0, rows);
+            Parallel.forRange(pool, 1, n+1, Math.max(EVALUATION_GRAIN/Math.max(rows, 1), 1), new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    for (int j=from; j<to; j++)
+                    {
+                        Kernels.scale(aj, (j-1)*rows, out, j*rows, factors[j-1], rows);
+                        Kernels.scale(bj, (j-1)*rows, out, (n+j)*rows, factors[j-1], rows);
+                    }
+                }
+            });
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+
+    /**
+     * Calculates the solution of each row at time t and passes them to a consumer in order of row, so the solutions
+     * can be streamed without holding them all.
+     *
+     * @param t time passed.
+     * @param consumer receives each solution in turn.
+     * @throws IllegalArgumentException if t is negative.
+     */
+    public void getSolution (double t, RowConsumer consumer)
+    {
+        double[] factors = decayFactors(t);
+        for (int r=0; r<rows; r++)
+        {
+            double[] a = new double[n];
+            double[] b = new double[n];
+            for (int j=0; j<n; j++)
+            {
+                a[j] = aj[j*rows + r]*factors[j];
+                b[j] = bj[j*rows + r]*factors[j];
+            }
+            consumer.accept(r, new FourierPolynomial(a0[r], a, b));
+        }
+    }
+
+    /**
+     * Calculates the solution of one row at time t.
+     *
+     * @param row the index of the initial condition.
+     * @param t time passed.
+     * @return a FourierPolynomial representing the solution of that row at time t.
+     * @throws IllegalArgumentException if t is negative.
+     * @throws IndexOutOfBoundsException if there is no such row.
+     */
+    public FourierPolynomial getSolution (int row, double t)
+    {
+        if (row < 0 || row >= rows)
+        {
+            throw new java.lang.IndexOutOfBoundsException("no row " + row);
+        }
+        double[] factors = decayFactors(t);
+        double[] a = new double[n];
+        double[] b = new double[n];
+        for (int j=0; j<n; j++)
+        {
+            a[j] = aj[j*rows + row]*factors[j];
+            b[j] = bj[j*rows + row]*factors[j];
+        }
+        return new FourierPolynomial(a0[row], a, b);
+    }
+
+    /**
+     * Calculates the value of every solution at a point x at time t. The rows are split into blocks across the pool,
+     * and each block adds the terms of each degree to its values in one contiguous pass.
+     *
+     * @param x the point in space.
+     * @param t time passed.
+     * @param out array of at least rows values to store the value of row r in out[r].
+     * @throws IllegalArgumentException if t is negative.
+     */
+    public void evaluateSolution (double x, double t, final double[] out)
+    {
+        double[] factors = decayFactors(t);
+        FourierMetrics metrics = FourierMetrics.begin("BatchHeatEquation.evaluateSolution");
+        try
+        {
+            final double[] c = new double[n];
+            final double[] s = new double[n];
+            for (int j=1; j<=n; j++)
+            {
+                c[j-1] = factors[j-1]*Math.cos(j*x);
+                s[j-1] = factors[j-1]*Math.sin(j*x);
+            }
+            Parallel.forRange(pool, 0, rows, EVALUATION_GRAIN, new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    Kernels.scale(a0, from, out, from, 0.5, to-from);
+                    for (int j=0; j<n; j++)
+                    {
+                        Kernels.axpy(c[j], aj, j*rows + from, out, from, to-from);
+                        Kernels.axpy(s[j], bj, j*rows + from, out, from, to-from);
+                    }
+                }
+            });
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * A RealFunction which can be evaluated at many points in one call. Subclasses override the batch valueAt to share 
+ * set-up between points or to evaluate them in vectorised loops. FourierTransformer, and so HeatEquation, sample 
+ * through the batch method whenever the function given to them is a BatchRealFunction.
+ * 
+ * By default the batch method calls the single point valueAt for each point, so a subclass need only override
+ * whichever methods it can do better.
+ */
+public class BatchRealFunction extends RealFunction
+{
+    /**
+     * Evaluates the function at each of an array of points.
+     * 
+     * @param xs the points to evaluate at.
+     * @param out array to store f(xs[i]) in out[i].
+     */
+    public void valueAt (double[] xs, double[] out)
+    {
+        valueAt(xs, out, 0, xs.length);
+    }
+    
+    /**
+     * Evaluates the function at a slice of an array of points.
+     * 
+     * @param xs the points to evaluate at.
+     * @param out array to store f(xs[i]) in out[i].
+     * @param offset the index of the first point to evaluate at.
+     * @param length the number of points to evaluate at.
+     */
+    public void valueAt (double[] xs, double[] out, int offset, int length)
+    {
+        for (int i=offset; i<offset+length; i++)
+        {
+            out[i] = valueAt(xs[i]);
+        }
+    }
+    
+    /**
+     * Evaluates any RealFunction at a slice of an array of points, through the batch method if it is a BatchRealFunction
+     * and otherwise one point at a time.
+     * 
+     * @param g the function to evaluate.
+     * @param xs the points to evaluate at.
+     * @param out array to store g(xs[i]) in out[i].
+     * @param offset the index of the first point to evaluate at.
+     * @param length the number of points to evaluate at.
+     */
+    static void sample (RealFunction g, double[] xs, double[] out, int offset, int length)
+    {
+        if (g instanceof BatchRealFunction)
+        {
+            ((BatchRealFunction) g).valueAt(xs, out, offset, length);
+        }
+        else
+        {
+            for (int i=offset; i<offset+length; i++)
+            {
+                out[i] = g.valueAt(xs[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Measures the throughput and allocation rate of the main operations of the project: FourierTransformer.approximate,
+ * FourierPolynomial.multiply, valueAt, derivative and antiderivative, and HeatEquation.evaluateSolution and getSolution.
+ *
+ * Each operation is run for a warm-up period so that it is compiled before it is timed, then timed over several
+ * measurement periods. The results are printed as operations per second, with the bytes allocated per operation
+ * when the virtual machine can report them.
+ *
+ * After compiling the project, run it from the project directory with, for example,
+ * <pre>
+ *   java Benchmark 16,128,512 1000,10000
+ * </pre>
+ * where the first argument lists the degrees and the second the numbers of subintervals to benchmark with.
+ */
+public class Benchmark
+{
+    /**
+     * The length of the warm-up period and of each measurement period in nanoseconds.
+     */
+    private static final long PERIOD = 500000000L;
+
+    /**
+     * The number of measurement periods.
+     */
+    private static final int PERIODS = 5;
+
+    /**
+     * Results are added to this field so that the operations cannot be optimised away.
+     */
+    static volatile double sink;
+
+    /**
+     * An operation to benchmark.
+     */
+    private abstract static class Operation
+    {
+        final String name;
+
+        Operation (String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Runs the operation once.
+         *
+         * @return a value depending on the result of the operation.
+         */
+        abstract double run ();
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args optionally, a comma separated list of degrees and a comma separated list of numbers of subintervals.
+     */
+    public static void main (String[] args)
+    {
+        int[] degrees = args.length > 0 ? parse(args[0]) : new int[] {16, 128, 512};
+        int[] resolutions = args.length > 1 ? parse(args[1]) : new int[] {1000, 10000};
+
+        final RealFunction g = new RealFunction()
+        {
+            public double valueAt (double x)
+            {
+                return Math.exp(Math.sin(x)) + x*(2.0*Math.PI - x);
+            }
+        };
+
+        System.out.printf("%-30s %8s %8s %14s %14s%n", "operation", "degree", "subInt", "ops/s", "bytes/op");
+        for (final int n : degrees)
+        {
+            for (final int subInt : resolutions)
+            {
+                final TransformOptions options = new TransformOptions(subInt);
+                report(new Operation("approximate")
+                {
+                    double run ()
+                    {
+                        return FourierTransformer.approximate(g, n, options).a0;
+                    }
+                }, n, subInt);
+
+                final HeatEquation heat = new HeatEquation(0.1, g, n, options);
+                report(new Operation("HeatEquation.evaluateSolution")
+                {
+                    double x = 0.0;
+
+                    double run ()
+                    {
+                        x += 0.001;
+                        return heat.evaluateSolution(x, 0.5);
+                    }
+                }, n, subInt);
+                report(new Operation("HeatEquation.getSolution")
+                {
+                    double run ()
+                    {
+                        return heat.getSolution(0.5).a0;
+                    }
+                }, n, subInt);
+            }
+
+            final FourierPolynomial f = FourierTransformer.approximate(g, n);
+            final FourierPolynomial zeroMean = new FourierPolynomial(0, f.aj, f.bj);
+            final FourierPolynomial recurrence = new FourierPolynomial(f.a0, f.aj, f.bj);
+            recurrence.setRecurrenceEvaluation(true);
+
+            report(new Operation("multiply")
+            {
+                double run ()
+                {
+                    return f.multiply(f).a0;
+                }
+            }, n, 0);
+            report(new Operation("valueAt")
+            {
+                double x = 0.0;
+
+                double run ()
+                {
+                    x += 0.001;
+                    return f.valueAt(x);
+                }
+            }, n, 0);
+            report(new Operation("valueAt (recurrence)")
+            {
+                double x = 0.0;
+
+                double run ()
+                {
+                    x += 0.001;
+                    return recurrence.valueAt(x);
+                }
+            }, n, 0);
+            report(new Operation("derivative")
+            {
+                double run ()
+                {
+                    return f.derivative().aj[0];
+                }
+            }, n, 0);
+            report(new Operation("antiderivative")
+            {
+                double run ()
+                {
+                    return zeroMean.antiderivative().aj[0];
+                }
+            }, n, 0);
+        }
+    }
+
+    /**
+     * Warms up, measures and prints the results for one operation. The throughput and the bytes allocated per 
+     * operation are both taken from the fastest measurement period.
+     */
+    private static void report (Operation operation, int n, int subInt)
+    {
+        measure(operation, PERIOD);
+        double best = 0.0;
+        double bytes = Double.NaN;
+        for (int p=0; p<PERIODS; p++)
+        {
+            long allocatedBefore = FourierMetrics.allocatedBytes();
+            long[] result = measure(operation, PERIOD);
+            long allocatedAfter = FourierMetrics.allocatedBytes();
+
+            double throughput = result[0]*1e9/result[1];
+            if (throughput > best)
+            {
+                best = throughput;
+                bytes = allocatedBefore >= 0 && allocatedAfter >= 0 ? (allocatedAfter - allocatedBefore)/(double) result[0] : Double.NaN;
+            }
+        }
+        System.out.printf("%-30s %8d %8s %14.1f %14.1f%n", operation.name, n, subInt > 0 ? Integer.toString(subInt) : "-", best, bytes);
+    }
+
+    /**
+     * Runs an operation repeatedly for at least the given time.
+     *
+     * @return the number of operations run and the time taken in nanoseconds.
+     */
+    private static long[] measure (Operation operation, long period)
+    {
+        long count = 0;
+        double total = 0.0;
+        long start = System.nanoTime();
+        long elapsed;
+        do
+        {
+            total += operation.run();
+            count++;
+            elapsed = System.nanoTime() - start;
+        }
+        while (elapsed < period);
+        sink = total;
+        return new long[] {count, elapsed};
+    }
+
+    /**
+     * Parses a comma separated list of integers.
+     */
+    private static int[] parse (String list)
+    {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i=0; i<parts.length; i++)
+        {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
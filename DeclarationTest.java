@@ -1,7 +1,10 @@
 import static org.junit.Assert.*;
 import org.junit.Test;
 import java.util.List;
+import java.util.ArrayList;
 import java.lang.reflect.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Mathematical Skills II, Programming (2017/18);
@@ -209,6 +212,66 @@ public class DeclarationTest
         testMethodDeclared(FourierPolynomial.class, "derivativeValueAt", double.class, double.class);
     }
 
+    /**
+     * Tests whether the recurrence evaluation gives the same values as the direct sum, including near 0 and π where
+     * the plain form of Clenshaw's recurrence loses accuracy.
+     */
+    @Test
+    public void recurrenceEvaluationTest()
+    {
+        int n = 100;
+        double[] aj = new double[n];
+        double[] bj = new double[n];
+        double norm = 0.0;
+        for (int j=0; j<n; j++)
+        {
+            aj[j] = Math.sin(3*j+1);
+            bj[j] = Math.cos(5*j+2);
+            norm += (j+1)*(Math.abs(aj[j]) + Math.abs(bj[j]));
+        }
+        FourierPolynomial direct = new FourierPolynomial(0.25, aj, bj);
+        FourierPolynomial recurrence = new FourierPolynomial(0.25, aj, bj);
+        recurrence.setRecurrenceEvaluation(true);
+        assertTrue("setRecurrenceEvaluation(true) must be reported", recurrence.usesRecurrenceEvaluation());
+        double[] xs = {0.0, 1e-9, 0.5, 1.0, Math.PI/2, Math.PI-1e-9, Math.PI, 4.0, 2*Math.PI-1e-9};
+        for (int i=0; i<xs.length; i++)
+        {
+            assertEquals("Value at "+xs[i], direct.valueAt(xs[i]), recurrence.valueAt(xs[i]), 1e-12*norm);
+            assertEquals("Derivative at "+xs[i], direct.derivativeValueAt(xs[i]), recurrence.derivativeValueAt(xs[i]), 1e-12*norm);
+        }
+    }
+
+    /**
+     * Tests whether the batch and grid versions of valueAt and derivativeValueAt are declared.
+     */
+    @Test
+    public void batchValueAtDeclaredTest()
+    {
+        testMethodDeclared(FourierPolynomial.class, "valueAt", void.class, doubleArray, doubleArray);
+        testMethodDeclared(FourierPolynomial.class, "valueAt", void.class, doubleArray, doubleArray, int.class, int.class);
+        testMethodDeclared(FourierPolynomial.class, "derivativeValueAt", void.class, doubleArray, doubleArray);
+        testMethodDeclared(FourierPolynomial.class, "derivativeValueAt", void.class, doubleArray, doubleArray, int.class, int.class);
+        testMethodDeclared(FourierPolynomial.class, "valueOnGrid", void.class, doubleArray, int.class, int.class);
+        testMethodDeclared(FourierPolynomial.class, "derivativeValueOnGrid", void.class, doubleArray, int.class, int.class);
+        testConstructorDeclared(EvaluationBuffers.class);
+        testMethodDeclared(FourierPolynomial.class, "valueAt", void.class, doubleArray, doubleArray, int.class, int.class, EvaluationBuffers.class);
+        testMethodDeclared(FourierPolynomial.class, "derivativeValueAt", void.class, doubleArray, doubleArray, int.class, int.class, EvaluationBuffers.class);
+        testMethodDeclared(FourierPolynomial.class, "valueOnGrid", void.class, doubleArray, int.class, int.class, EvaluationBuffers.class);
+        testMethodDeclared(FourierPolynomial.class, "derivativeValueOnGrid", void.class, doubleArray, int.class, int.class, EvaluationBuffers.class);
+    }
+
+    /**
+     * Tests whether the batch function class is declared and FourierPolynomial is one.
+     */
+    @Test
+    public void batchRealFunctionDeclaredTest()
+    {
+        testSubclassOf(BatchRealFunction.class, RealFunction.class);
+        testSubclassOf(FourierPolynomial.class, BatchRealFunction.class);
+        testMethodDeclared(BatchRealFunction.class, "valueAt", void.class, doubleArray, doubleArray);
+        testMethodDeclared(BatchRealFunction.class, "valueAt", void.class, doubleArray, doubleArray, int.class, int.class);
+    }
+
     /**
      * Tests whether the method add() is declared.
      */
@@ -227,6 +290,44 @@ public class DeclarationTest
         testMethodDeclared(FourierPolynomial.class, "multiply", FourierPolynomial.class, FourierPolynomial.class);
     }
 
+    /**
+     * Tests whether multiply() gives the pointwise product, both for low degrees, where the convolution is summed
+     * directly, and for high degrees, where it is found with the FFT.
+     */
+    @Test
+    public void multiplyMatchesPointwiseProductTest()
+    {
+        int[] degrees = {3, 300};
+        for (int d=0; d<degrees.length; d++)
+        {
+            int n = degrees[d];
+            double[] aj = new double[n];
+            double[] bj = new double[n];
+            double[] cj = new double[n+1];
+            double[] dj = new double[n+1];
+            for (int j=0; j<n; j++)
+            {
+                aj[j] = 1.0/(j+1);
+                bj[j] = Math.cos(j);
+            }
+            for (int j=0; j<=n; j++)
+            {
+                cj[j] = Math.sin(j+1);
+                dj[j] = 1.0/((j+1)*(j+1));
+            }
+            FourierPolynomial f = new FourierPolynomial(0.5, aj, bj);
+            FourierPolynomial g = new FourierPolynomial(-1.5, cj, dj);
+            FourierPolynomial product = f.multiply(g);
+            assertEquals("Degree of the product of degrees "+n+" and "+(n+1), 2*n+1, product.getDegree());
+            for (int i=0; i<20; i++)
+            {
+                double x = 0.3*i;
+                double expected = f.valueAt(x)*g.valueAt(x);
+                assertEquals("Product of degree "+(2*n+1)+" at "+x, expected, product.valueAt(x), 1e-10*Math.max(1.0, Math.abs(expected)));
+            }
+        }
+    }
+
     /**
      * Tests whether the methods derivative() and antiderivative() are declared.
      */
@@ -237,6 +338,33 @@ public class DeclarationTest
         testMethodDeclared(FourierPolynomial.class, "antiderivative", FourierPolynomial.class);
     }
 
+    /**
+     * Tests whether add() leaves both Fourier polynomials unchanged, whichever has the larger degree.
+     */
+    @Test
+    public void addLeavesOperandsUnchangedTest()
+    {
+        FourierPolynomial f = new FourierPolynomial(1.0, new double[] {2.0}, new double[] {3.0});
+        FourierPolynomial g = new FourierPolynomial(4.0, new double[] {5.0, 6.0, 7.0}, new double[] {8.0, 9.0, 10.0});
+        FourierPolynomial sum = f.add(g);
+        FourierPolynomial reversed = g.add(f);
+        assertEquals("Degree of f after f.add(g)", 1, f.getDegree());
+        assertEquals("Degree of g after f.add(g)", 3, g.getDegree());
+        assertEquals("a0 of f after f.add(g)", 1.0, f.getCoefficient(0, false), 0.0);
+        assertEquals("a0 of g after f.add(g)", 4.0, g.getCoefficient(0, false), 0.0);
+        for (int j=1; j<=3; j++)
+        {
+            assertEquals("a"+j+" of g after f.add(g)", 4.0+j, g.getCoefficient(j, false), 0.0);
+            assertEquals("b"+j+" of g after f.add(g)", 7.0+j, g.getCoefficient(j, true), 0.0);
+        }
+        assertEquals("a1 of f after f.add(g)", 2.0, f.getCoefficient(1, false), 0.0);
+        assertEquals("b1 of f after f.add(g)", 3.0, f.getCoefficient(1, true), 0.0);
+        assertFalse("f.add(g) must return a new Fourier polynomial", sum == f || sum == g);
+        assertFalse("g.add(f) must return a new Fourier polynomial", reversed == f || reversed == g);
+        assertEquals("a1 of f.add(g)", 7.0, sum.getCoefficient(1, false), 0.0);
+        assertEquals("b3 of f.add(g)", 10.0, sum.getCoefficient(3, true), 0.0);
+    }
+
     /**
      * Tests whether the class FourierTransformer and its methods are declared.
      */
@@ -244,6 +372,25 @@ public class DeclarationTest
     public void transformerDeclaredTest()
     {
         testFunctionDeclared(FourierTransformer.class, "approximate", FourierPolynomial.class, RealFunction.class, int.class);
+        testFunctionDeclared(FourierTransformer.class, "approximate", FourierPolynomial.class, RealFunction.class, int.class, TransformOptions.class);
+        testFunctionDeclared(FourierTransformer.class, "approximateToTolerance", FourierPolynomial.class, RealFunction.class, double.class);
+        testFunctionDeclared(FourierTransformer.class, "approximateToTolerance", FourierPolynomial.class, RealFunction.class, double.class, TransformOptions.class);
+        testFunctionDeclared(FourierTransformer.class, "approximateAdaptiveResolution", FourierPolynomial.class, RealFunction.class, int.class, double.class);
+        testFunctionDeclared(FourierTransformer.class, "approximateAdaptiveResolution", FourierPolynomial.class, RealFunction.class, int.class, double.class, TransformOptions.class);
+    }
+
+    /**
+     * Tests whether the class TransformOptions and its methods are declared.
+     */
+    @Test
+    public void transformOptionsDeclaredTest()
+    {
+        testConstructorDeclared(TransformOptions.class);
+        testConstructorDeclared(TransformOptions.class, int.class);
+        testMethodDeclared(TransformOptions.class, "getSubintervals", int.class);
+        testMethodDeclared(TransformOptions.class, "setSubintervals", TransformOptions.class, int.class);
+        testMethodDeclared(TransformOptions.class, "getEvaluationCount", long.class);
+        testMethodDeclared(TransformOptions.class, "getErrorEstimate", double.class);
     }
 
     /**
@@ -253,8 +400,498 @@ public class DeclarationTest
     public void heatEquationDeclaredTest()
     {
         testConstructorDeclared(HeatEquation.class, double.class, RealFunction.class, int.class);        
+        testFunctionDeclared(HeatEquation.class, "withTolerance", HeatEquation.class, double.class, RealFunction.class, double.class);
+        testMethodDeclared(HeatEquation.class, "getErrorEstimate", double.class);
         testMethodDeclared(HeatEquation.class, "evaluateSolution", double.class, double.class, double.class);
         testMethodDeclared(HeatEquation.class, "getSolution", FourierPolynomial.class, double.class);
+        testMethodDeclared(HeatEquation.class, "getSolution", FourierPolynomial.class, double.class, double.class);
+        testMethodDeclared(HeatEquation.class, "getCutoffDegree", int.class, double.class, double.class);
+    }
+
+    /**
+     * Tests whether the multi-dimensional classes and their methods are declared.
+     */
+    @Test
+    public void multiDimensionalDeclaredTest()
+    {
+        testConstructorDeclared(MultiFFT.class, int.class, int.class);
+        testConstructorDeclared(MultiFourierPolynomial.class, int.class, int.class, double[].class, double[].class);
+        testMethodDeclared(MultiFourierPolynomial.class, "valueAt", double.class, double[].class);
+        testFunctionDeclared(MultiFourierTransformer.class, "approximate", MultiFourierPolynomial.class, MultiRealFunction.class, int.class, int.class);
+        testConstructorDeclared(MultiHeatEquation.class, double.class, MultiRealFunction.class, int.class, int.class);
+        testMethodDeclared(MultiHeatEquation.class, "evaluateSolution", double.class, double[].class, double.class);
+        testMethodDeclared(MultiHeatEquation.class, "getSolution", MultiFourierPolynomial.class, double.class);
+    }
+
+    /**
+     * Tests whether the class PseudoSpectralStepper and its methods are declared.
+     */
+    @Test
+    public void pseudoSpectralStepperDeclaredTest()
+    {
+        testFunctionDeclared(PseudoSpectralStepper.class, "burgers", PseudoSpectralStepper.class, int.class, double.class, double.class);
+        testFunctionDeclared(PseudoSpectralStepper.class, "allenCahn", PseudoSpectralStepper.class, int.class, double.class, double.class);
+        testMethodDeclared(PseudoSpectralStepper.class, "setState", void.class, RealFunction.class);
+        testMethodDeclared(PseudoSpectralStepper.class, "advance", void.class, int.class);
+        testMethodDeclared(PseudoSpectralStepper.class, "getPolynomial", FourierPolynomial.class);
+    }
+
+    /**
+     * Tests whether the class NUFFT and its methods are declared.
+     */
+    @Test
+    public void nufftDeclaredTest()
+    {
+        testConstructorDeclared(NUFFT.class, int.class, double.class);
+        testMethodDeclared(NUFFT.class, "evaluate", void.class, FourierPolynomial.class, double[].class, double[].class);
+        testMethodDeclared(NUFFT.class, "approximate", FourierPolynomial.class, double[].class, double[].class, double[].class);
+    }
+
+    /**
+     * Tests whether NUFFT.evaluate() agrees with valueAt() at scattered points, some outside [0,2π], to within the
+     * tolerance relative to the sum of the absolute values of the coefficients, and whether NUFFT.approximate()
+     * recovers a Fourier polynomial from uniform samples.
+     */
+    @Test
+    public void nufftMatchesDirectSumTest()
+    {
+        int n = 20;
+        double[] aj = new double[n];
+        double[] bj = new double[n];
+        double norm = 0.4;
+        for (int j=0; j<n; j++)
+        {
+            aj[j] = Math.cos(5*j)/(j+1);
+            bj[j] = Math.sin(2*j+1)/(j+1);
+            norm += Math.abs(aj[j]) + Math.abs(bj[j]);
+        }
+        FourierPolynomial f = new FourierPolynomial(0.4, aj, bj);
+
+        double[] xs = new double[50];
+        for (int i=0; i<xs.length; i++)
+        {
+            xs[i] = -7.0 + 0.99*i;
+        }
+        double[] out = new double[xs.length];
+        double[] tolerances = {1e-6, 1e-10};
+        for (int t=0; t<tolerances.length; t++)
+        {
+            new NUFFT(n, tolerances[t]).evaluate(f, xs, out);
+            for (int i=0; i<xs.length; i++)
+            {
+                assertEquals("NUFFT with tolerance "+tolerances[t]+" at "+xs[i], f.valueAt(xs[i]), out[i], tolerances[t]*norm);
+            }
+        }
+
+        int m = 64;
+        double[] samples = new double[m];
+        double[] values = new double[m];
+        for (int i=0; i<m; i++)
+        {
+            samples[i] = 2.0*Math.PI*i/m;
+            values[i] = f.valueAt(samples[i]);
+        }
+        FourierPolynomial g = new NUFFT(n, 1e-15).approximate(samples, values, null);
+        assertEquals("Degree of the NUFFT approximation", n, g.getDegree());
+        for (int j=0; j<=n; j++)
+        {
+            assertEquals("a"+j+" of the NUFFT approximation", f.getCoefficient(j, false), g.getCoefficient(j, false), 1e-14);
+            if (j > 0)
+            {
+                assertEquals("b"+j+" of the NUFFT approximation", f.getCoefficient(j, true), g.getCoefficient(j, true), 1e-14);
+            }
+        }
+    }
+
+    /**
+     * Tests whether the class StreamingTransformer and its methods are declared.
+     */
+    @Test
+    public void streamingTransformerDeclaredTest()
+    {
+        testConstructorDeclared(StreamingTransformer.class, int.class, int.class);
+        testMethodDeclared(StreamingTransformer.class, "add", void.class, double.class);
+        testMethodDeclared(StreamingTransformer.class, "snapshot", FourierPolynomial.class);
+    }
+
+    /**
+     * Tests whether a StreamingTransformer fed many more samples than its window length and its resync interval gives
+     * the same Fourier polynomial as FourierTransformer.approximate() applied to the last window.
+     */
+    @Test
+    public void streamingMatchesBatchTest()
+    {
+        final int window = 64;
+        int n = 10;
+        int count = 500;
+        StreamingTransformer stream = new StreamingTransformer(window, n, 50);
+        final double[] last = new double[window];
+        for (int t=0; t<count; t++)
+        {
+            double sample = Math.sin(0.3*t) + 0.5*Math.cos(0.05*t*t) + 0.01*t;
+            stream.add(sample);
+            if (t >= count-window)
+            {
+                last[t-(count-window)] = sample;
+            }
+        }
+        FourierPolynomial streamed = stream.snapshot();
+        FourierPolynomial batch = FourierTransformer.approximate(new RealFunction()
+        {
+            public double valueAt(double x)
+            {
+                return last[(int) Math.round(x*window/(2*Math.PI)) % window];
+            }
+        }, n, new TransformOptions(window));
+        assertEquals("Degree of the snapshot", n, streamed.getDegree());
+        for (int j=0; j<=n; j++)
+        {
+            assertEquals("a"+j+" of the snapshot", batch.getCoefficient(j, false), streamed.getCoefficient(j, false), 1e-12);
+            if (j > 0)
+            {
+                assertEquals("b"+j+" of the snapshot", batch.getCoefficient(j, true), streamed.getCoefficient(j, true), 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Tests whether the class BatchHeatEquation and its methods are declared.
+     */
+    @Test
+    public void batchHeatEquationDeclaredTest()
+    {
+        testConstructorDeclared(BatchHeatEquation.class, double.class, RealFunction[].class, int.class, TransformOptions.class);
+        testConstructorDeclared(BatchHeatEquation.class, double.class, double[].class, int.class, TransformOptions.class);
+        testMethodDeclared(BatchHeatEquation.class, "getSolution", void.class, double.class, double[].class);
+        testMethodDeclared(BatchHeatEquation.class, "evaluateSolution", void.class, double.class, double.class, double[].class);
+    }
+
+    /**
+     * Tests whether each row of a BatchHeatEquation gives the same solution as a HeatEquation for its initial condition
+     * made with the same number of subintervals. HeatEquation leaves out the terms which have decayed below the
+     * rounding error, so the coefficients are compared up to the degree of the batch.
+     */
+    @Test
+    public void batchHeatEquationMatchesSingleTest()
+    {
+        final double[] shifts = {0.0, 0.4, 1.3};
+        RealFunction[] conditions = new RealFunction[shifts.length];
+        for (int r=0; r<shifts.length; r++)
+        {
+            final double shift = shifts[r];
+            conditions[r] = new RealFunction()
+            {
+                public double valueAt(double x)
+                {
+                    return Math.exp(Math.sin(x + shift)) + shift*Math.cos(3*x);
+                }
+            };
+        }
+        int n = 16;
+        double alpha = 0.2;
+        BatchHeatEquation batch = new BatchHeatEquation(alpha, conditions, n, new TransformOptions(1000));
+        double[] out = new double[shifts.length];
+        double[] times = {0.0, 0.5};
+        for (int k=0; k<times.length; k++)
+        {
+            double t = times[k];
+            batch.evaluateSolution(1.1, t, out);
+            for (int r=0; r<shifts.length; r++)
+            {
+                HeatEquation single = new HeatEquation(alpha, conditions[r], n, new TransformOptions(1000));
+                FourierPolynomial expected = single.getSolution(t);
+                FourierPolynomial row = batch.getSolution(r, t);
+                for (int j=0; j<=n; j++)
+                {
+                    assertEquals("a"+j+" of row "+r+" at time "+t, expected.getCoefficient(j, false), row.getCoefficient(j, false), 1e-12);
+                    if (j > 0)
+                    {
+                        assertEquals("b"+j+" of row "+r+" at time "+t, expected.getCoefficient(j, true), row.getCoefficient(j, true), 1e-12);
+                    }
+                }
+                assertEquals("Value of row "+r+" at time "+t, single.evaluateSolution(1.1, t), out[r], 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Tests whether the class TableCache and its methods are declared.
+     */
+    @Test
+    public void tableCacheDeclaredTest()
+    {
+        testFunctionDeclared(TableCache.class, "setMemoryBudget", void.class, long.class);
+        testFunctionDeclared(TableCache.class, "getHits", long.class);
+        testFunctionDeclared(TableCache.class, "getMisses", long.class);
+        testFunctionDeclared(TableCache.class, "getEvictions", long.class);
+    }
+
+    /**
+     * Tests whether the class FourierExpression and its methods are declared.
+     */
+    @Test
+    public void fourierExpressionDeclaredTest()
+    {
+        testFunctionDeclared(FourierExpression.class, "of", FourierExpression.class, FourierPolynomial.class);
+        testMethodDeclared(FourierExpression.class, "add", FourierExpression.class, FourierExpression.class);
+        testMethodDeclared(FourierExpression.class, "multiply", FourierExpression.class, FourierExpression.class);
+        testMethodDeclared(FourierExpression.class, "derivative", FourierExpression.class);
+        testMethodDeclared(FourierExpression.class, "antiderivative", FourierExpression.class);
+        testMethodDeclared(FourierExpression.class, "materialize", FourierPolynomial.class);
+    }
+
+    /**
+     * Tests whether a formula gives the same coefficients and values as the eager methods, both for d/dx(f·g) + h and
+     * for a formula using the same product twice, and whether the antiderivative of a formula with non-zero a0 is
+     * rejected like the eager antiderivative().
+     */
+    @Test
+    public void fourierExpressionMatchesEagerTest()
+    {
+        FourierPolynomial f = new FourierPolynomial(1.0, new double[] {0.5, -0.25, 0.125}, new double[] {0.0, 1.0, 0.5});
+        FourierPolynomial g = new FourierPolynomial(-2.0, new double[] {0.3, 0.2}, new double[] {0.7, -0.1});
+        FourierPolynomial h = new FourierPolynomial(0.5, new double[] {1.0, 0.0, 0.0, 0.0, 2.0}, new double[] {0.0, 0.0, 3.0, 0.0, 0.0});
+
+        FourierExpression product = FourierExpression.of(f).multiply(g);
+        FourierExpression[] lazy = {product.derivative().add(h), product.derivative().add(h).add(FourierExpression.of(f).multiply(g))};
+        FourierPolynomial[] eager = {f.multiply(g).derivative().add(h), f.multiply(g).derivative().add(h).add(f.multiply(g))};
+        double[] xs = new double[12];
+        for (int i=0; i<xs.length; i++)
+        {
+            xs[i] = 0.55*i - 0.8;
+        }
+        double[] out = new double[xs.length];
+        for (int e=0; e<lazy.length; e++)
+        {
+            FourierPolynomial expected = eager[e];
+            lazy[e].valueAt(xs, out, 0, xs.length);
+            for (int i=0; i<xs.length; i++)
+            {
+                assertEquals("Value of formula "+e+" at "+xs[i], expected.valueAt(xs[i]), lazy[e].valueAt(xs[i]), 1e-12);
+                assertEquals("Batch value of formula "+e+" at "+xs[i], expected.valueAt(xs[i]), out[i], 1e-12);
+            }
+            FourierPolynomial result = lazy[e].materialize();
+            assertEquals("Degree of formula "+e, expected.getDegree(), result.getDegree());
+            for (int j=0; j<=expected.getDegree(); j++)
+            {
+                assertEquals("a"+j+" of formula "+e, expected.getCoefficient(j, false), result.getCoefficient(j, false), 1e-12);
+                if (j > 0)
+                {
+                    assertEquals("b"+j+" of formula "+e, expected.getCoefficient(j, true), result.getCoefficient(j, true), 1e-12);
+                }
+            }
+        }
+
+        try
+        {
+            f.antiderivative();
+            fail("antiderivative() of a polynomial with non-zero a0 must throw");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        try
+        {
+            FourierExpression.of(f).antiderivative().materialize();
+            fail("The antiderivative of a formula with non-zero a0 must throw when evaluated");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Tests whether the sparse representation and the methods converting between representations are declared.
+     */
+    @Test
+    public void sparseFourierPolynomialDeclaredTest()
+    {
+        testConstructorDeclared(SparseFourierPolynomial.class, double.class, int[].class, double[].class, double[].class);
+        testFunctionDeclared(SparseFourierPolynomial.class, "fromDense", SparseFourierPolynomial.class, FourierPolynomial.class);
+        testMethodDeclared(SparseFourierPolynomial.class, "add", TrigonometricPolynomial.class, TrigonometricPolynomial.class);
+        testMethodDeclared(SparseFourierPolynomial.class, "multiply", TrigonometricPolynomial.class, TrigonometricPolynomial.class);
+        testMethodDeclared(SparseFourierPolynomial.class, "compact", TrigonometricPolynomial.class);
+        testMethodDeclared(FourierPolynomial.class, "add", TrigonometricPolynomial.class, TrigonometricPolynomial.class);
+        testMethodDeclared(FourierPolynomial.class, "multiply", TrigonometricPolynomial.class, TrigonometricPolynomial.class);
+        testMethodDeclared(FourierPolynomial.class, "compact", TrigonometricPolynomial.class);
+        testMethodDeclared(FourierPolynomial.class, "toSparse", SparseFourierPolynomial.class);
+    }
+
+    /**
+     * Tests whether the sums and products of sparse Fourier polynomials, with sparse and with dense operands, give the
+     * pointwise sums and products, including products of polynomials so full that they are multiplied as dense ones.
+     */
+    @Test
+    public void sparseMatchesPointwiseTest()
+    {
+        SparseFourierPolynomial f = new SparseFourierPolynomial(0.5, new int[] {3, 40, 41}, new double[] {1.0, -0.5, 0.25}, new double[] {0.0, 2.0, -1.0});
+        SparseFourierPolynomial g = new SparseFourierPolynomial(-1.0, new int[] {1, 40, 100}, new double[] {0.3, 0.5, 0.7}, new double[] {1.5, -2.0, 0.1});
+        double[] aj = new double[12];
+        double[] bj = new double[12];
+        for (int j=0; j<12; j++)
+        {
+            aj[j] = 1.0/(j+1);
+            bj[j] = Math.sin(j);
+        }
+        FourierPolynomial h = new FourierPolynomial(2.0, aj, bj);
+
+        int terms = 500;
+        int[] degrees = new int[terms];
+        double[] a = new double[terms];
+        double[] b = new double[terms];
+        for (int t=0; t<terms; t++)
+        {
+            degrees[t] = 2*t+2;
+            a[t] = Math.cos(t)/(t+1);
+            b[t] = Math.sin(3*t)/(t+1);
+        }
+        SparseFourierPolynomial full = new SparseFourierPolynomial(0.1, degrees, a, b);
+
+        TrigonometricPolynomial[][] pairs = {{f, g}, {f, h}, {g, f}, {full, full}, {full, f}};
+        for (int p=0; p<pairs.length; p++)
+        {
+            TrigonometricPolynomial u = pairs[p][0];
+            TrigonometricPolynomial v = pairs[p][1];
+            TrigonometricPolynomial sum = u.add(v);
+            TrigonometricPolynomial product = u.multiply(v);
+            for (int i=0; i<20; i++)
+            {
+                double x = 0.37*i - 1.0;
+                double expected = u.valueAt(x) + v.valueAt(x);
+                assertEquals("Sum of pair "+p+" at "+x, expected, sum.valueAt(x), 1e-10*Math.max(1.0, Math.abs(expected)));
+                expected = u.valueAt(x)*v.valueAt(x);
+                assertEquals("Product of pair "+p+" at "+x, expected, product.valueAt(x), 1e-10*Math.max(1.0, Math.abs(expected)));
+            }
+        }
+        assertTrue("The product of two full polynomials must be dense", full.multiply(full) instanceof FourierPolynomial);
+    }
+
+    /**
+     * Tests whether compact() keeps the sparse representation up to a fill of a quarter of the degrees and uses the
+     * dense one above it, and whether the constructor copies its arrays.
+     */
+    @Test
+    public void sparseCompactThresholdTest()
+    {
+        int[] degrees = {2, 8};
+        double[] a = {1.0, 2.0};
+        double[] b = {3.0, 4.0};
+        SparseFourierPolynomial quarter = new SparseFourierPolynomial(1.0, degrees, a, b);
+        a[0] = 5.0;
+        degrees[1] = 9;
+        assertEquals("Coefficient after changing the array passed in", 1.0, quarter.getCoefficient(2, false), 0.0);
+        assertEquals("Degree after changing the array passed in", 8, quarter.getDegree());
+        assertTrue("A quarter full sparse polynomial must stay sparse", quarter.compact() == quarter);
+
+        SparseFourierPolynomial over = new SparseFourierPolynomial(1.0, new int[] {2, 5, 8}, new double[] {1.0, 2.0, 3.0}, new double[] {4.0, 5.0, 6.0});
+        TrigonometricPolynomial dense = over.compact();
+        assertTrue("A sparse polynomial more than a quarter full must become dense", dense instanceof FourierPolynomial);
+        FourierPolynomial sparseAsDense = quarter.toDense();
+        assertTrue("A quarter full dense polynomial must become sparse", sparseAsDense.compact() instanceof SparseFourierPolynomial);
+        assertTrue("A dense polynomial more than a quarter full must stay dense", dense.compact() == dense);
+        for (int i=0; i<10; i++)
+        {
+            double x = 0.7*i;
+            assertEquals("Dense form at "+x, over.valueAt(x), dense.valueAt(x), 1e-12);
+            assertEquals("Sparse form at "+x, quarter.valueAt(x), sparseAsDense.compact().valueAt(x), 1e-12);
+        }
+    }
+
+    /**
+     * Tests whether Fourier polynomials written by FourierIO and mapped by MappedFourierFile come back with the same
+     * coefficients and values, storing the coefficients both as double and as float, and mapping the file both whole
+     * and in segments too short to hold more than one polynomial.
+     */
+    @Test
+    public void mappedFileRoundTripTest() throws java.io.IOException
+    {
+        List<FourierPolynomial> polynomials = new ArrayList<FourierPolynomial>();
+        int[] degrees = {0, 5, 40};
+        for (int d=0; d<degrees.length; d++)
+        {
+            int n = degrees[d];
+            double[] aj = new double[n];
+            double[] bj = new double[n];
+            for (int j=0; j<n; j++)
+            {
+                aj[j] = Math.sin(7*j+d)/(j+1);
+                bj[j] = Math.cos(3*j+d)/(j+1);
+            }
+            polynomials.add(new FourierPolynomial(1.0/(d+3), aj, bj));
+        }
+        boolean[] widths = {false, true};
+        long[] segments = {MappedFourierFile.MAX_SEGMENT, 700};
+        Path path = Files.createTempFile("fourier", ".bin");
+        try
+        {
+            for (int w=0; w<widths.length; w++)
+            {
+                boolean float32 = widths[w];
+                FourierIO.write(path, polynomials, float32);
+                for (int s=0; s<segments.length; s++)
+                {
+                    MappedFourierFile file = new MappedFourierFile(path, segments[s]);
+                    try
+                    {
+                        assertEquals("Number of polynomials read", polynomials.size(), file.size());
+                        assertEquals("Width of the coefficients read", float32, file.isFloat32());
+                        for (int i=0; i<polynomials.size(); i++)
+                        {
+                            checkMapped(polynomials.get(i), file.get(i), float32);
+                        }
+                    }
+                    finally
+                    {
+                        file.close();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Checks a mapped Fourier polynomial against the one written, whose coefficients are rounded to float if float32.
+     */
+    private void checkMapped(FourierPolynomial written, MappedFourierPolynomial mapped, boolean float32)
+    {
+        int n = written.getDegree();
+        String msg = (float32 ? "float" : "double")+" polynomial of degree "+n;
+        FourierPolynomial copy = mapped.toPolynomial();
+        assertEquals("Degree of mapped "+msg, n, mapped.getDegree());
+        assertEquals("Degree of copied "+msg, n, copy.getDegree());
+        for (int j=0; j<=n; j++)
+        {
+            for (int k=0; k<2; k++)
+            {
+                boolean wantB = k == 1;
+                if (j == 0 && wantB)
+                {
+                    continue;
+                }
+                double expected = written.getCoefficient(j, wantB);
+                if (float32)
+                {
+                    expected = (float) expected;
+                }
+                assertEquals("Coefficient "+j+" of copied "+msg, expected, copy.getCoefficient(j, wantB), 0.0);
+                assertEquals("Coefficient "+j+" of mapped "+msg, expected, mapped.getCoefficient(j, wantB), 0.0);
+            }
+        }
+        copy.setRecurrenceEvaluation(true);
+        for (int i=0; i<10; i++)
+        {
+            double x = 0.7*i - 1.0;
+            assertEquals("Value of mapped "+msg+" at "+x, copy.valueAt(x), mapped.valueAt(x), 0.0);
+            assertEquals("Derivative of mapped "+msg+" at "+x, copy.derivativeValueAt(x), mapped.derivativeValueAt(x), 0.0);
+            double tolerance = float32 ? 1e-5 : 1e-12;
+            assertEquals("Value of "+msg+" at "+x, written.valueAt(x), mapped.valueAt(x), tolerance);
+        }
     }
 
 }
@@ -0,0 +1,96 @@
+/**
+ * Scratch space for evaluating Fourier polynomials at many points: the state of the recurrence for a block of points
+ * used by the batch valueAt methods, and the transform and buffers used by valueOnGrid. Passing the same
+ * EvaluationBuffers object to each call means that evaluating a long array a slice at a time allocates nothing once
+ * the buffers are large enough. The methods which are not given one use a buffer kept for the calling thread.
+ *
+ * An EvaluationBuffers object holds scratch space so it should not be shared between threads.
+ *
+ * @see FourierPolynomial
+ */
+public class EvaluationBuffers
+{
+    /**
+     * The buffers of each thread, used when the caller does not give any.
+     */
+    private static final ThreadLocal<EvaluationBuffers> local = new ThreadLocal<EvaluationBuffers>()
+    {
+        protected EvaluationBuffers initialValue ()
+        {
+            return new EvaluationBuffers();
+        }
+    };
+
+    /**
+     * The sign σ, multiplier κ and sin(x) of each point of a block, and the recurrence for its cosine and sine terms.
+     */
+    final double[] sigma = new double[FourierPolynomial.BLOCK];
+    final double[] kappa = new double[FourierPolynomial.BLOCK];
+    final double[] sinX = new double[FourierPolynomial.BLOCK];
+    final double[] uA = new double[FourierPolynomial.BLOCK];
+    final double[] dA = new double[FourierPolynomial.BLOCK];
+    final double[] uB = new double[FourierPolynomial.BLOCK];
+    final double[] dB = new double[FourierPolynomial.BLOCK];
+
+    /**
+     * Buffers for the real and imaginary parts of a grid transform.
+     */
+    private double[] re = new double[0];
+    private double[] im = new double[0];
+
+    /**
+     * The transform used for the last number of grid points.
+     */
+    private FFT fft;
+
+    /**
+     * Constructor for the EvaluationBuffers class.
+     */
+    public EvaluationBuffers ()
+    {
+    }
+
+    /**
+     * Returns the buffers kept for the calling thread.
+     */
+    static EvaluationBuffers forThread ()
+    {
+        return local.get();
+    }
+
+    /**
+     * Returns a buffer of at least the given length for the real parts of a grid transform.
+     */
+    double[] realBuffer (int length)
+    {
+        if (re.length < length)
+        {
+            re = new double[length];
+        }
+        return re;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for the imaginary parts of a grid transform.
+     */
+    double[] imaginaryBuffer (int length)
+    {
+        if (im.length < length)
+        {
+            im = new double[length];
+        }
+        return im;
+    }
+
+    /**
+     * Returns a transform of the given length, reusing the previous transform if it has the same length.
+     */
+    FFT transform (int length)
+    {
+        if (fft == null || fft.n != length)
+        {
+            fft = TableCache.fft(length);
+        }
+        return fft;
+    }
+}
@@ -0,0 +1,338 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A fast Fourier transform of complex sequences of any length. Lengths which are powers of two use an
+ * iterative radix-2 transform, all other lengths are reduced to a power of two using Bluestein's algorithm.
+ *
+ * A FFT object holds its own scratch space so a single object should not be shared between threads, although a single
+ * transform can be split across the threads of a ForkJoinPool.
+ */
+public class FFT
+{
+    /**
+     * The length of the sequences transformed.
+     */
+    final int n;
+
+    /**
+     * The twiddles exp(-2πik/size) of each radix-2 stage, only used when n is a power of two. The twiddles of the
+     * stage combining blocks of half = size/2 are stored contiguously from index half-1 so that the butterflies read
+     * them with unit stride.
+     */
+    private final double[] twiddleRe;
+    private final double[] twiddleIm;
+
+    /**
+     * The power of two transform used for the convolution in Bluestein's algorithm, null when n is a power of two.
+     */
+    private final FFT inner;
+
+    /**
+     * The chirp exp(-iπk²/n) for 0 <= k < n, only used by Bluestein's algorithm.
+     */
+    private double[] chirpRe;
+    private double[] chirpIm;
+
+    /**
+     * The transformed convolution kernel for Bluestein's algorithm.
+     */
+    private double[] kernelRe;
+    private double[] kernelIm;
+
+    /**
+     * Scratch space of the length of the inner transform for Bluestein's algorithm.
+     */
+    private double[] scratchRe;
+    private double[] scratchIm;
+
+    /**
+     * Constructor for the FFT class.
+     *
+     * @param length the length of the sequences to be transformed.
+     * @throws IllegalArgumentException if length is not positive.
+     */
+    public FFT (int length)
+    {
+        if (length < 1)
+        {
+            throw new java.lang.IllegalArgumentException("length must be positive");
+        }
+        n = length;
+
+        if (isPowerOfTwo(n))
+        {
+            twiddleRe = new double[Math.max(n-1, 0)];
+            twiddleIm = new double[Math.max(n-1, 0)];
+            for (int half=1; half<n; half <<= 1)
+            {
+                for (int k=0; k<half; k++)
+                {
+                    twiddleRe[half-1+k] = Math.cos(Math.PI*k/half);
+                    twiddleIm[half-1+k] = -Math.sin(Math.PI*k/half);
+                }
+            }
+            inner = null;
+        }
+        else
+        {
+            twiddleRe = null;
+            twiddleIm = null;
+            int m = nextPowerOfTwo(2*n-1);
+            inner = new FFT(m);
+
+            chirpRe = new double[n];
+            chirpIm = new double[n];
+            for (int k=0; k<n; k++)
+            {
+                // k² is reduced modulo 2n before scaling so the angle stays accurate for large k.
+                double angle = Math.PI*(double) (((long) k*k) % (2L*n))/n;
+                chirpRe[k] = Math.cos(angle);
+                chirpIm[k] = -Math.sin(angle);
+            }
+
+            // The kernel is the conjugate chirp, wrapped around so that negative indices sit at the end.
+            kernelRe = new double[m];
+            kernelIm = new double[m];
+            kernelRe[0] = chirpRe[0];
+            kernelIm[0] = -chirpIm[0];
+            for (int k=1; k<n; k++)
+            {
+                kernelRe[k] = chirpRe[k];
+                kernelIm[k] = -chirpIm[k];
+                kernelRe[m-k] = chirpRe[k];
+                kernelIm[m-k] = -chirpIm[k];
+            }
+            inner.forward(kernelRe, kernelIm);
+
+            scratchRe = new double[m];
+            scratchIm = new double[m];
+        }
+    }
+
+    /**
+     * Constructor for a FFT which shares the twiddles and chirps of another but has its own scratch space, so that 
+     * copies can be used on different threads at once without recalculating the tables.
+     */
+    private FFT (FFT shared)
+    {
+        n = shared.n;
+        twiddleRe = shared.twiddleRe;
+        twiddleIm = shared.twiddleIm;
+        inner = shared.inner;
+        chirpRe = shared.chirpRe;
+        chirpIm = shared.chirpIm;
+        kernelRe = shared.kernelRe;
+        kernelIm = shared.kernelIm;
+        if (inner != null)
+        {
+            scratchRe = new double[shared.scratchRe.length];
+            scratchIm = new double[shared.scratchIm.length];
+        }
+    }
+
+    /**
+     * Returns a transform of the same length which can be used on another thread at the same time as this one.
+     *
+     * @return a transform sharing the tables of this one.
+     */
+    FFT copy ()
+    {
+        return new FFT(this);
+    }
+
+    /**
+     * Returns the approximate number of bytes held by the tables and scratch space of this transform.
+     */
+    long tableBytes ()
+    {
+        if (inner == null)
+        {
+            return 16L*twiddleRe.length;
+        }
+        return 16L*(chirpRe.length + kernelRe.length + scratchRe.length) + inner.tableBytes();
+    }
+
+    /**
+     * Returns the length of the sequences transformed.
+     *
+     * @return the length of the transform.
+     */
+    public int length ()
+    {
+        return n;
+    }
+
+    /**
+     * Replaces a sequence x with its discrete Fourier transform X_k = Σ x_j exp(-2πijk/n).
+     *
+     * @param re the real parts of the sequence, at least n long.
+     * @param im the imaginary parts of the sequence, at least n long.
+     */
+    public void forward (double[] re, double[] im)
+    {
+        forward(re, im, null);
+    }
+
+    /**
+     * Replaces a sequence x with its discrete Fourier transform, splitting each radix-2 stage of long transforms
+     * across the threads of a pool. Every butterfly is calculated exactly as in the serial transform, so the result 
+     * is identical to that of forward(re, im) whatever the number of threads.
+     *
+     * @param re the real parts of the sequence, at least n long.
+     * @param im the imaginary parts of the sequence, at least n long.
+     * @param pool the pool to use, or null to calculate the transform on the calling thread.
+     */
+    public void forward (double[] re, double[] im, ForkJoinPool pool)
+    {
+        if (inner == null)
+        {
+            radix2(re, im, pool);
+        }
+        else
+        {
+            bluestein(re, im, pool);
+        }
+    }
+
+    /**
+     * Replaces a sequence X with its unnormalised inverse transform x_j = Σ X_k exp(2πijk/n).
+     * The result has to be divided by n to undo the forward transform.
+     *
+     * @param re the real parts of the sequence, at least n long.
+     * @param im the imaginary parts of the sequence, at least n long.
+     */
+    public void inverse (double[] re, double[] im)
+    {
+        inverse(re, im, null);
+    }
+
+    /**
+     * Replaces a sequence X with its unnormalised inverse transform, splitting long transforms across the threads of a pool.
+     *
+     * @param re the real parts of the sequence, at least n long.
+     * @param im the imaginary parts of the sequence, at least n long.
+     * @param pool the pool to use, or null to calculate the transform on the calling thread.
+     */
+    public void inverse (double[] re, double[] im, ForkJoinPool pool)
+    {
+        // Swapping the real and imaginary parts turns the forward transform into the inverse transform.
+        forward(im, re, pool);
+    }
+
+    /**
+     * The number of butterflies given to each task when a stage is split across threads.
+     */
+    private static final int GRAIN = 1 << 12;
+
+    /**
+     * The iterative radix-2 transform for power of two lengths.
+     */
+    private void radix2 (final double[] re, final double[] im, ForkJoinPool pool)
+    {
+        // Bit reversal permutation.
+        for (int i=1, j=0; i<n; i++)
+        {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+            {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j)
+            {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+
+        if (pool == null || n/2 <= GRAIN)
+        {
+            for (int half=1; half<n; half <<= 1)
+            {
+                for (int start=0; start<n; start+=2*half)
+                {
+                    Kernels.butterflies(re, im, start, start+half, twiddleRe, twiddleIm, half-1, half);
+                }
+            }
+            return;
+        }
+
+        for (int stage=1; stage<n; stage <<= 1)
+        {
+            final int half = stage;
+            // Butterfly b combines index p+k with p+k+half, where p = 2*half*(b/half) and k = b%half.
+            Parallel.forRange(pool, 0, n/2, GRAIN, new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    int b = from;
+                    while (b < to)
+                    {
+                        int k = b % half;
+                        int count = Math.min(half-k, to-b);
+                        int p = 2*half*(b/half) + k;
+                        Kernels.butterflies(re, im, p, p+half, twiddleRe, twiddleIm, half-1+k, count);
+                        b += count;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Bluestein's algorithm, which writes the transform as a convolution computed with a power of two transform.
+     */
+    private void bluestein (double[] re, double[] im, ForkJoinPool pool)
+    {
+        int m = scratchRe.length;
+        for (int k=0; k<n; k++)
+        {
+            scratchRe[k] = re[k]*chirpRe[k] - im[k]*chirpIm[k];
+            scratchIm[k] = re[k]*chirpIm[k] + im[k]*chirpRe[k];
+        }
+        for (int k=n; k<m; k++)
+        {
+            scratchRe[k] = 0.0;
+            scratchIm[k] = 0.0;
+        }
+
+        inner.forward(scratchRe, scratchIm, pool);
+        Kernels.complexMultiply(scratchRe, scratchIm, kernelRe, kernelIm, m);
+        inner.inverse(scratchRe, scratchIm, pool);
+
+        for (int k=0; k<n; k++)
+        {
+            double r = scratchRe[k]/m;
+            double i = scratchIm[k]/m;
+            re[k] = r*chirpRe[k] - i*chirpIm[k];
+            im[k] = r*chirpIm[k] + i*chirpRe[k];
+        }
+    }
+
+    /**
+     * Checks whether a positive integer is a power of two.
+     *
+     * @param n the integer to check.
+     * @return true if n is a power of two.
+     */
+    static boolean isPowerOfTwo (int n)
+    {
+        return (n & (n-1)) == 0;
+    }
+
+    /**
+     * Finds the smallest power of two which is not less than n.
+     *
+     * @param n a positive integer.
+     * @return the smallest power of two greater than or equal to n.
+     */
+    static int nextPowerOfTwo (int n)
+    {
+        int p = 1;
+        while (p < n)
+        {
+            p <<= 1;
+        }
+        return p;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * A running sum of Fourier polynomials which is updated in place. The coefficients are held in arrays which grow
+ * when a polynomial of higher degree is added, so once they are large enough adding a term allocates nothing.
+ * 
+ * A FourierAccumulator object is not safe to update from several threads at once.
+ */
+public class FourierAccumulator
+{
+    /**
+     * The zeroth Fourier coefficient of the sum.
+     */
+    private double a0;
+    
+    /**
+     * The cosine Fourier coefficients of the sum, of which the first degree are in use.
+     */
+    private double[] aj;
+    
+    /**
+     * The sine Fourier coefficients of the sum, of which the first degree are in use.
+     */
+    private double[] bj;
+    
+    /**
+     * The degree of the sum, which is the highest degree of the polynomials added.
+     */
+    private int degree;
+    
+    /**
+     * Constructor for the FourierAccumulator class, starting from zero.
+     */
+    public FourierAccumulator ()
+    {
+        this(16);
+    }
+    
+    /**
+     * Constructor for the FourierAccumulator class, starting from zero with room for polynomials up to a given degree.
+     * 
+     * @param capacity the degree which can be added before the coefficient arrays have to grow.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    public FourierAccumulator (int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new java.lang.IllegalArgumentException("capacity cannot be negative");
+        }
+        aj = new double[capacity];
+        bj = new double[capacity];
+    }
+    
+    /**
+     * Adds a Fourier polynomial to the sum.
+     * 
+     * @param f the Fourier polynomial to add, which is not modified.
+     * @return this FourierAccumulator object.
+     */
+    public FourierAccumulator addInPlace (FourierPolynomial f)
+    {
+        return scaleAndAdd(1.0, f);
+    }
+    
+    /**
+     * Adds a multiple of a Fourier polynomial to the sum.
+     * 
+     * @param factor the number to multiply f by.
+     * @param f the Fourier polynomial to add, which is not modified.
+     * @return this FourierAccumulator object.
+     */
+    public FourierAccumulator scaleAndAdd (double factor, FourierPolynomial f)
+    {
+        int n = f.aj.length;
+        ensureCapacity(n);
+        a0 += factor*f.a0;
+        Kernels.axpy(factor, f.aj, aj, n);
+        Kernels.axpy(factor, f.bj, bj, n);
+        if (n > degree)
+        {
+            degree = n;
+        }
+        return this;
+    }
+    
+    /**
+     * Multiplies the sum by a number.
+     * 
+     * @param factor the number to multiply by.
+     * @return this FourierAccumulator object.
+     */
+    public FourierAccumulator scale (double factor)
+    {
+        a0 *= factor;
+        Kernels.scale(aj, 0, aj, 0, factor, degree);
+        Kernels.scale(bj, 0, bj, 0, factor, degree);
+        return this;
+    }
+    
+    /**
+     * Resets the sum to zero, keeping the coefficient arrays for reuse.
+     */
+    public void clear ()
+    {
+        a0 = 0.0;
+        java.util.Arrays.fill(aj, 0, degree, 0.0);
+        java.util.Arrays.fill(bj, 0, degree, 0.0);
+        degree = 0;
+    }
+    
+    /**
+     * Returns the degree of the sum, which is the highest degree of the polynomials added since it was last cleared.
+     * 
+     * @return the degree of the sum.
+     */
+    public int getDegree ()
+    {
+        return degree;
+    }
+    
+    /**
+     * Copies the current sum into a new Fourier polynomial. Later changes to the sum do not affect it.
+     * 
+     * @return the coefficients of the sum as a FourierPolynomial object.
+     */
+    public FourierPolynomial snapshot ()
+    {
+        return new FourierPolynomial(a0, java.util.Arrays.copyOf(aj, degree), java.util.Arrays.copyOf(bj, degree));
+    }
+    
+    /**
+     * Grows the coefficient arrays, at least doubling their length, if they are shorter than n.
+     */
+    private void ensureCapacity (int n)
+    {
+        if (aj.length < n)
+        {
+            int capacity = Math.max(n, 2*aj.length);
+            aj = java.util.Arrays.copyOf(aj, capacity);
+            bj = java.util.Arrays.copyOf(bj, capacity);
+        }
+    }
+}
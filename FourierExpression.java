@@ -0,0 +1,730 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A lazy formula of Fourier polynomials built from add, scale, multiply, derivative and antiderivative, such as
+ * d/dx(f·g) + h. Nothing is calculated while the formula is built. The whole formula is evaluated in one go the
+ * first time it is needed, by materialize or by any valueAt, and the result is kept.
+ *
+ * Addition, scaling, differentiation and integration are linear, and each multiplies the coefficients of degree j by
+ * a factor and swaps cosine and sine terms. The formula is therefore held as a sum of terms s·D^k(p), where D^k is
+ * the derivative of order k (or the antiderivative if k is negative) and p is a Fourier polynomial or a product.
+ * Building the formula only updates this list, and evaluating it adds every term to the result in one sweep over its
+ * coefficients, with no intermediate polynomial. A sum only records its two addends when it is made, so a chain of k
+ * additions takes O(k) time. The list is found the first time it is needed by walking the addends once, merging
+ * terms with the same order and base through a hash map. Each distinct product, however often it appears, is
+ * calculated once per evaluation. The factors of a
+ * product are swept straight into the complex coefficients the convolution needs, in scratch buffers shared by every
+ * product of the evaluation.
+ *
+ * The result is the same as applying the eager methods of FourierPolynomial one after another, except that an
+ * antiderivative of something with non-zero a0 is only reported when the formula is evaluated.
+ * A FourierExpression object is immutable and can be shared between threads.
+ *
+ * @see FourierPolynomial
+ */
+public class FourierExpression extends BatchRealFunction
+{
+    /**
+     * The terms of the sum, with no two having the same order, base and a0 handling, or null for a sum whose addends
+     * have not been flattened yet.
+     */
+    private volatile Term[] terms;
+
+    /**
+     * The operands of the antiderivatives taken, whose a0 must be insignificant. Set before terms.
+     */
+    private volatile FourierExpression[] zeroMean;
+
+    /**
+     * The addends of a sum, or null if the terms were given when the formula was made.
+     */
+    private final FourierExpression left;
+    private final FourierExpression right;
+
+    /**
+     * The structural hash code, found from the terms the first time it is needed, or zero until then.
+     */
+    private volatile int hash;
+
+    /**
+     * The degree of the result.
+     */
+    private final int degree;
+
+    /**
+     * The result of the formula, found the first time it is needed.
+     */
+    private volatile FourierPolynomial value;
+
+    /**
+     * Makes an expression from its terms.
+     */
+    private FourierExpression (Term[] terms, FourierExpression[] zeroMean)
+    {
+        this.zeroMean = zeroMean;
+        this.terms = terms;
+        left = null;
+        right = null;
+        int n = 0;
+        for (int i=0; i<terms.length; i++)
+        {
+            n = Math.max(n, terms[i].base.degree());
+        }
+        degree = n;
+    }
+
+    /**
+     * Makes the sum of two expressions, leaving its terms to be found when they are needed.
+     */
+    private FourierExpression (FourierExpression left, FourierExpression right)
+    {
+        this.left = left;
+        this.right = right;
+        degree = Math.max(left.degree, right.degree);
+    }
+
+    /**
+     * Starts a formula from a Fourier polynomial. Its result is f itself, so materialize returns f rather than a copy.
+     *
+     * @param f the Fourier polynomial, which must not be modified while the formula is in use.
+     * @return the formula f.
+     */
+    public static FourierExpression of (FourierPolynomial f)
+    {
+        FourierExpression e = new FourierExpression(new Term[] {new Term(1.0, 0, true, new Leaf(f))}, new FourierExpression[0]);
+        e.value = f;
+        return e;
+    }
+
+    /**
+     * Adds another formula. Terms found in both are merged when the terms of the sum are first needed.
+     *
+     * @param e the formula to add.
+     * @return the formula of the sum.
+     */
+    public FourierExpression add (FourierExpression e)
+    {
+        return new FourierExpression(this, e);
+    }
+
+    /**
+     * Adds a Fourier polynomial.
+     *
+     * @param f the Fourier polynomial to add.
+     * @return the formula of the sum.
+     */
+    public FourierExpression add (FourierPolynomial f)
+    {
+        return add(of(f));
+    }
+
+    /**
+     * Multiplies the formula by a constant.
+     *
+     * @param factor the constant.
+     * @return the formula of the multiple.
+     */
+    public FourierExpression scale (double factor)
+    {
+        Term[] terms = terms();
+        Term[] scaled = new Term[terms.length];
+        for (int i=0; i<terms.length; i++)
+        {
+            Term t = terms[i];
+            scaled[i] = new Term(factor*t.scale, t.order, t.mean, t.base);
+        }
+        return new FourierExpression(scaled, zeroMean());
+    }
+
+    /**
+     * Multiplies by another formula. The product is calculated once however many times it appears in a formula.
+     *
+     * @param e the formula to multiply by.
+     * @return the formula of the product.
+     */
+    public FourierExpression multiply (FourierExpression e)
+    {
+        return new FourierExpression(new Term[] {new Term(1.0, 0, true, new Product(this, e))}, new FourierExpression[0]);
+    }
+
+    /**
+     * Multiplies by a Fourier polynomial.
+     *
+     * @param f the Fourier polynomial to multiply by.
+     * @return the formula of the product.
+     */
+    public FourierExpression multiply (FourierPolynomial f)
+    {
+        return multiply(of(f));
+    }
+
+    /**
+     * Takes the derivative of the formula.
+     *
+     * @return the formula of the derivative.
+     */
+    public FourierExpression derivative ()
+    {
+        return differentiate(1, zeroMean());
+    }
+
+    /**
+     * Takes the antiderivative of the formula. As with FourierPolynomial it cannot be found for non-zero a0, which is
+     * checked when the formula is evaluated.
+     *
+     * @return the formula of the antiderivative.
+     */
+    public FourierExpression antiderivative ()
+    {
+        FourierExpression[] zeroMean = zeroMean();
+        FourierExpression[] checks = Arrays.copyOf(zeroMean, zeroMean.length+1);
+        checks[zeroMean.length] = this;
+        return differentiate(-1, checks);
+    }
+
+    /**
+     * Shifts the order of every term, which drops a0.
+     */
+    private FourierExpression differentiate (int step, FourierExpression[] checks)
+    {
+        Term[] terms = terms();
+        Term[] shifted = new Term[terms.length];
+        for (int i=0; i<terms.length; i++)
+        {
+            Term t = terms[i];
+            shifted[i] = new Term(t.scale, t.order + step, false, t.base);
+        }
+        return new FourierExpression(shifted, checks);
+    }
+
+    /**
+     * Returns the degree of the result, which is the same as the eager methods would give.
+     *
+     * @return the degree.
+     */
+    public int getDegree ()
+    {
+        return degree;
+    }
+
+    /**
+     * Evaluates the formula. It is only calculated the first time, and the same Fourier polynomial is returned after.
+     * For a formula made by of(f) the result is f itself, not a copy.
+     *
+     * @return the coefficients of the result as a FourierPolynomial object.
+     * @throws IllegalArgumentException if an antiderivative is taken of something with |a0| > 10^(-10).
+     */
+    public FourierPolynomial materialize ()
+    {
+        FourierPolynomial f = value;
+        if (f == null)
+        {
+            FourierMetrics metrics = FourierMetrics.begin("FourierExpression.materialize");
+            try
+            {
+                f = new Evaluation().evaluate(this);
+                value = f;
+            }
+            finally
+            {
+                if (metrics != null)
+                {
+                    metrics.end(0);
+                }
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Calculates the value of the formula at a point.
+     *
+     * @param x the point to evaluate at.
+     * @return the value at x.
+     */
+    public double valueAt (double x)
+    {
+        return materialize().valueAt(x);
+    }
+
+    /**
+     * Calculates the value of the derivative of the formula at a point.
+     *
+     * @param x the point to evaluate at.
+     * @return the value of the derivative at x.
+     */
+    public double derivativeValueAt (double x)
+    {
+        return materialize().derivativeValueAt(x);
+    }
+
+    /**
+     * Evaluates the formula at a slice of an array of points.
+     *
+     * @param xs the points to evaluate at.
+     * @param out array to store the value at xs[i] in out[i].
+     * @param offset the index of the first point to evaluate at.
+     * @param length the number of points to evaluate at.
+     */
+    public void valueAt (double[] xs, double[] out, int offset, int length)
+    {
+        materialize().valueAt(xs, out, offset, length);
+    }
+
+    /**
+     * Compares the terms of two formulas, which are equal if they have the same terms in any order. Fourier
+     * polynomials are compared by identity.
+     */
+    public boolean equals (Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof FourierExpression))
+        {
+            return false;
+        }
+        FourierExpression e = (FourierExpression) o;
+        Term[] terms = terms();
+        Term[] others = e.terms();
+        if (hashCode() != e.hashCode() || terms.length != others.length)
+        {
+            return false;
+        }
+        // No two terms of a formula are alike, so the terms are equal as sets.
+        return new HashSet<Term>(Arrays.asList(others)).containsAll(Arrays.asList(terms));
+    }
+
+    public int hashCode ()
+    {
+        int h = hash;
+        if (h == 0)
+        {
+            Term[] terms = terms();
+            for (int i=0; i<terms.length; i++)
+            {
+                h += terms[i].hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the terms, flattening the addends of a sum the first time.
+     */
+    private Term[] terms ()
+    {
+        Term[] t = terms;
+        if (t == null)
+        {
+            flatten();
+            t = terms;
+        }
+        return t;
+    }
+
+    /**
+     * Returns the operands of the antiderivatives taken, flattening the addends of a sum the first time.
+     */
+    private FourierExpression[] zeroMean ()
+    {
+        terms();
+        return zeroMean;
+    }
+
+    /**
+     * Walks the addends of a sum from left to right, merging alike terms through a map from each kind of term to its
+     * place in the list, and collecting the antiderivative checks of every addend.
+     */
+    private void flatten ()
+    {
+        HashMap<Like, Integer> index = new HashMap<Like, Integer>();
+        ArrayList<Term> sum = new ArrayList<Term>();
+        ArrayList<FourierExpression> checks = new ArrayList<FourierExpression>();
+        ArrayDeque<FourierExpression> pending = new ArrayDeque<FourierExpression>();
+        pending.push(this);
+        while (!pending.isEmpty())
+        {
+            FourierExpression e = pending.pop();
+            Term[] t = e.terms;
+            if (t == null)
+            {
+                pending.push(e.right);
+                pending.push(e.left);
+                continue;
+            }
+            for (int i=0; i<t.length; i++)
+            {
+                Like key = new Like(t[i]);
+                Integer k = index.get(key);
+                if (k == null)
+                {
+                    index.put(key, sum.size());
+                    sum.add(t[i]);
+                }
+                else
+                {
+                    Term u = sum.get(k);
+                    sum.set(k, new Term(u.scale + t[i].scale, u.order, u.mean, u.base));
+                }
+            }
+            checks.addAll(Arrays.asList(e.zeroMean));
+        }
+        zeroMean = checks.toArray(new FourierExpression[checks.size()]);
+        terms = sum.toArray(new Term[sum.size()]);
+    }
+
+    /**
+     * One term s·D^k(p) of the sum.
+     */
+    private static final class Term
+    {
+        final double scale;
+        final int order;
+
+        /**
+         * Whether a0 of the base is kept, which it is not once a derivative or antiderivative is taken.
+         */
+        final boolean mean;
+
+        /**
+         * The base, either a Leaf or a Product.
+         */
+        final Base base;
+
+        Term (double scale, int order, boolean mean, Base base)
+        {
+            this.scale = scale;
+            this.order = order;
+            this.mean = mean;
+            this.base = base;
+        }
+
+        /**
+         * Whether the terms differ only in scale, so they can be merged.
+         */
+        boolean like (Term t)
+        {
+            return order == t.order && mean == t.mean && base.equals(t.base);
+        }
+
+        public boolean equals (Object o)
+        {
+            return o instanceof Term && like((Term) o) && Double.compare(scale, ((Term) o).scale) == 0;
+        }
+
+        public int hashCode ()
+        {
+            long bits = Double.doubleToLongBits(scale);
+            return 31*(31*base.hashCode() + order) + (mean ? 1 : 0) + (int) (bits ^ (bits >>> 32));
+        }
+    }
+
+    /**
+     * A term compared by its order, base and a0 handling alone, so that terms which differ only in scale are equal.
+     */
+    private static final class Like
+    {
+        final Term term;
+
+        Like (Term term)
+        {
+            this.term = term;
+        }
+
+        public boolean equals (Object o)
+        {
+            return o instanceof Like && term.like(((Like) o).term);
+        }
+
+        public int hashCode ()
+        {
+            return 31*(31*term.base.hashCode() + term.order) + (term.mean ? 1 : 0);
+        }
+    }
+
+    /**
+     * The base of a term.
+     */
+    private static abstract class Base
+    {
+        abstract int degree ();
+    }
+
+    /**
+     * A Fourier polynomial, compared by identity.
+     */
+    private static final class Leaf extends Base
+    {
+        final FourierPolynomial f;
+
+        Leaf (FourierPolynomial f)
+        {
+            this.f = f;
+        }
+
+        int degree ()
+        {
+            return f.aj.length;
+        }
+
+        public boolean equals (Object o)
+        {
+            return o instanceof Leaf && ((Leaf) o).f == f;
+        }
+
+        public int hashCode ()
+        {
+            return System.identityHashCode(f);
+        }
+    }
+
+    /**
+     * The product of two formulas, which is the same whichever way round they are.
+     */
+    private static final class Product extends Base
+    {
+        final FourierExpression left;
+        final FourierExpression right;
+
+        Product (FourierExpression left, FourierExpression right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        int degree ()
+        {
+            return left.getDegree() + right.getDegree();
+        }
+
+        public boolean equals (Object o)
+        {
+            if (!(o instanceof Product))
+            {
+                return false;
+            }
+            Product p = (Product) o;
+            return (left.equals(p.left) && right.equals(p.right)) || (left.equals(p.right) && right.equals(p.left));
+        }
+
+        public int hashCode ()
+        {
+            return left.hashCode() + right.hashCode();
+        }
+    }
+
+    /**
+     * The state of one evaluation: the products found so far and the scratch buffers.
+     */
+    private static final class Evaluation
+    {
+        /**
+         * The value of each distinct product.
+         */
+        private final HashMap<Product, FourierPolynomial> products = new HashMap<Product, FourierPolynomial>();
+
+        /**
+         * The real coefficients of a factor, and the complex coefficients of both factors of a product.
+         */
+        private double[] a = new double[0];
+        private double[] b = new double[0];
+        private double[] cRe = new double[0];
+        private double[] cIm = new double[0];
+        private double[] eRe = new double[0];
+        private double[] eIm = new double[0];
+
+        /**
+         * Evaluates a formula into a new Fourier polynomial.
+         */
+        FourierPolynomial evaluate (FourierExpression e)
+        {
+            resolve(e);
+            int n = e.getDegree();
+            double[] aj = new double[n];
+            double[] bj = new double[n];
+            double a0 = sweep(e, aj, bj);
+            return new FourierPolynomial(a0, aj, bj);
+        }
+
+        /**
+         * Calculates every product the formula needs and checks its antiderivatives, so that it can be swept.
+         */
+        private void resolve (FourierExpression e)
+        {
+            if (e.value != null)
+            {
+                return;
+            }
+            Term[] terms = e.terms();
+            for (int i=0; i<terms.length; i++)
+            {
+                if (terms[i].base instanceof Product)
+                {
+                    product((Product) terms[i].base);
+                }
+            }
+            FourierExpression[] zeroMean = e.zeroMean();
+            for (int i=0; i<zeroMean.length; i++)
+            {
+                resolve(zeroMean[i]);
+                if (Math.abs(mean(zeroMean[i])) > 1e-10)
+                {
+                    throw new java.lang.IllegalArgumentException("The antiderivative cannot be found for non-zero a0");
+                }
+            }
+        }
+
+        /**
+         * Returns the value of a product, calculating it the first time.
+         */
+        private FourierPolynomial product (Product p)
+        {
+            FourierPolynomial f = products.get(p);
+            if (f == null)
+            {
+                resolve(p.left);
+                resolve(p.right);
+                int l = p.left.getDegree();
+                int m = p.right.getDegree();
+                if (cRe.length < 2*l+1)
+                {
+                    cRe = new double[2*l+1];
+                    cIm = new double[2*l+1];
+                }
+                if (eRe.length < 2*m+1)
+                {
+                    eRe = new double[2*m+1];
+                    eIm = new double[2*m+1];
+                }
+                complexCoefficients(p.left, l, cRe, cIm);
+                complexCoefficients(p.right, m, eRe, eIm);
+                f = FourierPolynomial.convolve(cRe, cIm, l, eRe, eIm, m);
+                products.put(p, f);
+            }
+            return f;
+        }
+
+        /**
+         * Returns a0 of a resolved formula.
+         */
+        private double mean (FourierExpression e)
+        {
+            if (e.value != null)
+            {
+                return e.value.a0;
+            }
+            double a0 = 0.0;
+            Term[] terms = e.terms();
+            for (int i=0; i<terms.length; i++)
+            {
+                Term t = terms[i];
+                if (t.mean)
+                {
+                    a0 += t.scale*base(t).a0;
+                }
+            }
+            return a0;
+        }
+
+        /**
+         * Sweeps a resolved formula of degree n into the complex coefficients c_k for -n <= k <= n, stored at k+n.
+         */
+        private void complexCoefficients (FourierExpression e, int n, double[] re, double[] im)
+        {
+            if (a.length < n)
+            {
+                a = new double[n];
+                b = new double[n];
+            }
+            double a0;
+            if (e.value != null)
+            {
+                a0 = e.value.a0;
+                System.arraycopy(e.value.aj, 0, a, 0, n);
+                System.arraycopy(e.value.bj, 0, b, 0, n);
+            }
+            else
+            {
+                Arrays.fill(a, 0, n, 0.0);
+                Arrays.fill(b, 0, n, 0.0);
+                a0 = sweep(e, a, b);
+            }
+            re[n] = a0/2.0;
+            im[n] = 0.0;
+            for (int k=1; k<=n; k++)
+            {
+                re[n+k] = a[k-1]/2.0;
+                im[n+k] = -b[k-1]/2.0;
+                re[n-k] = a[k-1]/2.0;
+                im[n-k] = b[k-1]/2.0;
+            }
+        }
+
+        /**
+         * Adds every term of a resolved formula to the coefficients aj and bj, which must be zero to start with and
+         * long enough for its degree, and returns a0.
+         */
+        private double sweep (FourierExpression e, double[] aj, double[] bj)
+        {
+            double a0 = 0.0;
+            Term[] terms = e.terms();
+            for (int i=0; i<terms.length; i++)
+            {
+                Term t = terms[i];
+                FourierPolynomial f = base(t);
+                if (t.mean)
+                {
+                    a0 += t.scale*f.a0;
+                }
+                accumulate(t.scale, t.order, f.aj, f.bj, aj, bj);
+            }
+            return a0;
+        }
+
+        /**
+         * Returns the Fourier polynomial of the base of a term, which must have been resolved.
+         */
+        private FourierPolynomial base (Term t)
+        {
+            return t.base instanceof Leaf ? ((Leaf) t.base).f : products.get(t.base);
+        }
+    }
+
+    /**
+     * Adds s·D^k of the terms of degree 1 to n, with cosine coefficients x and sine coefficients y, to a and b.
+     * D multiplies the term of degree j by j and turns (x, y) into (y, -x), so D^k multiplies it by j^k and turns it
+     * k quarter turns.
+     */
+    private static void accumulate (double s, int k, double[] x, double[] y, double[] a, double[] b)
+    {
+        int n = x.length;
+        if (k == 0)
+        {
+            Kernels.axpy(s, x, a, n);
+            Kernels.axpy(s, y, b, n);
+            return;
+        }
+        int turns = ((k % 4) + 4) % 4;
+        double p = turns == 0 ? 1.0 : turns == 2 ? -1.0 : 0.0; // cos(turns·π/2)
+        double q = turns == 1 ? 1.0 : turns == 3 ? -1.0 : 0.0; // sin(turns·π/2)
+        int power = Math.abs(k);
+        for (int j=1; j<=n; j++)
+        {
+            double w = 1.0;
+            for (int i=0; i<power; i++)
+            {
+                w *= j;
+            }
+            w = k > 0 ? s*w : s/w;
+            a[j-1] += w*(p*x[j-1] + q*y[j-1]);
+            b[j-1] += w*(p*y[j-1] - q*x[j-1]);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes FourierPolynomial objects to a compact binary file which can be read back with MappedFourierFile.
+ *
+ * All values are little-endian. The file starts with a header of 16 bytes:
+ * <pre>
+ *   int   magic    the bytes "FPLY"
+ *   short version  currently 1
+ *   short flags    bit 0 set if the coefficients are stored as float rather than double
+ *   long  count    the number of polynomials
+ * </pre>
+ * followed by count longs giving the offset in the file of each polynomial, and then the polynomials themselves.
+ * Each polynomial is an int degree n followed by a0, the n cosine coefficients and the n sine coefficients.
+ */
+public class FourierIO
+{
+    /**
+     * The first four bytes of a file, "FPLY" read as a little-endian int.
+     */
+    static final int MAGIC = 0x594C5046;
+
+    /**
+     * The version of the format written.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * The flag set when coefficients are stored as float.
+     */
+    static final short FLOAT32 = 1;
+
+    /**
+     * The length of the header in bytes.
+     */
+    static final int HEADER = 16;
+
+    /**
+     * Writes a list of Fourier polynomials to a file, replacing the file if it exists.
+     *
+     * @param path the file to write.
+     * @param polynomials the Fourier polynomials to write.
+     * @param float32 true to store the coefficients as float, halving the size at the cost of precision.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write (Path path, List<FourierPolynomial> polynomials, boolean float32) throws IOException
+    {
+        int width = float32 ? 4 : 8;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort(float32 ? FLOAT32 : 0).putLong(polynomials.size());
+            header.flip();
+            writeFully(channel, header);
+
+            // The offset table, written a block at a time.
+            ByteBuffer table = ByteBuffer.allocate(8*1024).order(ByteOrder.LITTLE_ENDIAN);
+            long offset = HEADER + 8L*polynomials.size();
+            for (FourierPolynomial f : polynomials)
+            {
+                if (!table.hasRemaining())
+                {
+                    table.flip();
+                    writeFully(channel, table);
+                    table.clear();
+                }
+                table.putLong(offset);
+                offset += recordLength(f.aj.length, width);
+            }
+            table.flip();
+            writeFully(channel, table);
+
+            ByteBuffer record = ByteBuffer.allocate(0);
+            for (FourierPolynomial f : polynomials)
+            {
+                long length = recordLength(f.aj.length, width);
+                if (length > Integer.MAX_VALUE)
+                {
+                    throw new java.lang.IllegalArgumentException("a polynomial of degree " + f.aj.length + " is too large to store");
+                }
+                if (record.capacity() < length)
+                {
+                    record = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                record.clear();
+                record.putInt(f.aj.length);
+                put(record, f.a0, float32);
+                for (int j=0; j<f.aj.length; j++)
+                {
+                    put(record, f.aj[j], float32);
+                }
+                for (int j=0; j<f.bj.length; j++)
+                {
+                    put(record, f.bj[j], float32);
+                }
+                record.flip();
+                writeFully(channel, record);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the number of bytes used to store a polynomial of degree n with coefficients of the given width.
+     */
+    static long recordLength (int n, int width)
+    {
+        return 4 + (long) width*(2L*n + 1);
+    }
+
+    /**
+     * Stores a coefficient as a double or float.
+     */
+    private static void put (ByteBuffer buffer, double value, boolean float32)
+    {
+        if (float32)
+        {
+            buffer.putFloat((float) value);
+        }
+        else
+        {
+            buffer.putDouble(value);
+        }
+    }
+
+    /**
+     * Writes all the remaining bytes of a buffer to a channel.
+     */
+    private static void writeFully (FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+}
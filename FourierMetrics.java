@@ -0,0 +1,114 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * The hook through which FourierTransformer, FourierPolynomial and HeatEquation report the time, function evaluations
+ * and allocation of their operations. No listener is installed to begin with, and while there is none an operation 
+ * only reads a single field to find that out.
+ * 
+ * An instrumented operation calls begin when it starts, which returns null when metrics are disabled, and calls end 
+ * on the object returned from a finally block, so that an operation which throws is still reported.
+ * 
+ * Allocation is measured with ThreadMXBean.getThreadAllocatedBytes for the thread which called the operation. 
+ * Memory allocated by other threads on its behalf, such as the workers of a ForkJoinPool given in the 
+ * TransformOptions, is not counted, so the figures for parallel operations are lower than the true allocation. 
+ * Time is wall-clock time and does include the work of other threads.
+ * 
+ * @see MetricsListener
+ * @see MetricsCollector
+ */
+public class FourierMetrics
+{
+    /**
+     * The installed listener, or null if metrics are disabled.
+     */
+    private static volatile MetricsListener listener;
+    
+    /**
+     * The listener the operation will be reported to.
+     */
+    private final MetricsListener target;
+    
+    /**
+     * The name of the operation.
+     */
+    private final String operation;
+    
+    /**
+     * The bytes allocated by the thread when the operation started, or -1 if not measured.
+     */
+    private final long startBytes;
+    
+    /**
+     * The time the operation started.
+     */
+    private final long startNanos;
+    
+    /**
+     * Constructor for the FourierMetrics class, used for each operation measured.
+     */
+    private FourierMetrics (MetricsListener target, String operation)
+    {
+        this.target = target;
+        this.operation = operation;
+        startBytes = target.measuresAllocation() ? allocatedBytes() : -1;
+        startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Installs a listener for the operations of the project, replacing any installed before.
+     * 
+     * @param metricsListener the listener, or null to disable metrics.
+     */
+    public static void setListener (MetricsListener metricsListener)
+    {
+        listener = metricsListener;
+    }
+    
+    /**
+     * Returns the installed listener.
+     * 
+     * @return the listener, or null if metrics are disabled.
+     */
+    public static MetricsListener getListener ()
+    {
+        return listener;
+    }
+    
+    /**
+     * Starts measuring an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the object to call end on when the operation finishes, or null if metrics are disabled.
+     */
+    static FourierMetrics begin (String operation)
+    {
+        MetricsListener target = listener;
+        return target == null ? null : new FourierMetrics(target, operation);
+    }
+    
+    /**
+     * Finishes measuring the operation and reports it to the listener installed when it began.
+     * 
+     * @param evaluations the number of evaluations of a user supplied RealFunction made by the operation.
+     */
+    void end (long evaluations)
+    {
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+        target.record(operation, evaluations, nanos, bytes);
+    }
+    
+    /**
+     * Returns the number of bytes allocated by the current thread, or -1 if the virtual machine cannot report it. 
+     * Allocation by any other thread is not included.
+     */
+    static long allocatedBytes ()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Used to transform RealFunction objects in to FourierPolynomial objects.
  */
@@ -13,43 +15,411 @@ public class FourierTransformer
      * @see FourierPolynomial
      */
     public static FourierPolynomial approximate (RealFunction g, int n)
+    {
+        return approximate(g, n, new TransformOptions());
+    }
+    
+    /**
+     * Approximates a real function on the interval [0,2π] using the composite trapezium rule with the number of 
+     * subintervals given by the options. g is sampled exactly once at each of the subInt+1 points into a buffer held
+     * by the options. The trapezium sums for every coefficient are the discrete Fourier transform of the samples, 
+     * so they are all found at once with a fast Fourier transform rather than summed separately for each j.
+     * If the options give a pool, the samples are taken in chunks on the pool and the transform is split across it.
+     * 
+     * @param g the RealFunction object to be approximated.
+     * @param n the degree of the resulting Fourier polynomial, assumed to be non-negative.
+     * @param options the number of subintervals to use, and where the number of evaluations of g is recorded.
+     * @return a FourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if n is negative.
+     * @see FourierPolynomial
+     * @see TransformOptions
+     */
+    public static FourierPolynomial approximate (RealFunction g, int n, TransformOptions options)
     {
         if (n < 0)
         {
             throw new java.lang.IllegalArgumentException("n cannot be negative");
         }
-        int subInt = 10000;
-        double h = (2.0*Math.PI)/ (double) subInt;
-        double a0 = h*( g.valueAt(0.0) + g.valueAt(2.0*Math.PI) )/(2.0*Math.PI); // Start and end points.
-        double[] aj = new double[n];
-        double[] bj = new double[n];
-
-        for (int i=1; i<subInt; i++)
+        int subInt = options.getSubintervals();
+        FourierMetrics metrics = FourierMetrics.begin("FourierTransformer.approximate");
+        try
+        {
+            ForkJoinPool pool = options.getPool();
+        
+            // Samples g once at each point. The start and end points share the first entry with half weight each.
+            double[] samples = options.sampleBuffer(subInt);
+            sample(g, samples, subInt, pool, g instanceof BatchRealFunction ? options.nodes(subInt) : null);
+            options.setEvaluationCount(subInt+1);
+            options.setErrorEstimate(Double.NaN);
+        
+            double[] re = options.realBuffer(subInt/2+1);
+            double[] im = options.imaginaryBuffer(subInt/2+1);
+            options.transform(subInt).forward(samples, re, im, pool);
+        
+            FourierPolynomial f = coefficients(re, im, subInt, n);
+            return f;
+        }
+        finally
         {
-                a0 += h*( g.valueAt(i*h) )/Math.PI;
+            if (metrics != null)
+            {
+                metrics.end(subInt+1);
+            }
         }
-        if (n == 0) // If n=0 returns a0 with aj,bj empty.
+    }
+    
+    /**
+     * Approximates a real function on the interval [0,2π] with a Fourier polynomial whose degree is chosen to meet a 
+     * tolerance, using the composite trapezium rule with 10,000 subintervals.
+     * 
+     * @param g the RealFunction object to be approximated.
+     * @param tolerance the amplitude below which terms are left out.
+     * @return a FourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if tolerance is not positive.
+     * @see #approximateToTolerance(RealFunction, double, TransformOptions)
+     */
+    public static FourierPolynomial approximateToTolerance (RealFunction g, double tolerance)
+    {
+        return approximateToTolerance(g, tolerance, new TransformOptions());
+    }
+    
+    /**
+     * Approximates a real function on the interval [0,2π] with a Fourier polynomial whose degree is chosen to meet a 
+     * tolerance. All the coefficients below the Nyquist frequency subInt/2 are found with one transform, and the degree
+     * is the last at which the amplitude sqrt(a_j² + b_j²) is above the tolerance. When the amplitudes level off at the 
+     * rounding error of the transform before reaching the tolerance, the degree is the last above four times that level 
+     * instead, since the terms beyond are noise. 
+     * The sum of the amplitudes of the terms left out is recorded as the error estimate in the options, or infinity
+     * if the amplitudes are still above the tolerance at the Nyquist frequency, in which case more subintervals are needed.
+     * 
+     * @param g the RealFunction object to be approximated.
+     * @param tolerance the amplitude below which terms are left out.
+     * @param options the number of subintervals to use, and where the number of evaluations and the error estimate are recorded.
+     * @return a FourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if tolerance is not positive.
+     * @see TransformOptions#getErrorEstimate()
+     */
+    public static FourierPolynomial approximateToTolerance (RealFunction g, double tolerance, TransformOptions options)
+    {
+        if (!(tolerance > 0))
         {
-            return new FourierPolynomial(a0,aj,bj);
+            throw new java.lang.IllegalArgumentException("tolerance must be positive");
         }
-        else // Otherwise calculates the values of aj,bj up to degree n.
+        int subInt = options.getSubintervals();
+        int nyquist = subInt/2;
+        
+        // Transforms at the highest useful degree, below the Nyquist frequency.
+        FourierPolynomial full = approximate(g, Math.max(nyquist-1, 0), options);
+        double[] amplitude = new double[full.aj.length];
+        for (int j=0; j<amplitude.length; j++)
         {
-            for (int j=1; j<=n; j++)
+            amplitude[j] = Math.hypot(full.aj[j], full.bj[j]);
+        }
+        
+        int n = truncationDegree(amplitude, tolerance);
+        double error = 0.0;
+        if (n == amplitude.length && n > 0)
+        {
+            // The terms are still above the tolerance at the Nyquist frequency, so the rest cannot be resolved.
+            error = Double.POSITIVE_INFINITY;
+        }
+        for (int j=n; j<amplitude.length; j++)
+        {
+            error += amplitude[j];
+        }
+        options.setErrorEstimate(error);
+        return new FourierPolynomial(full.a0, java.util.Arrays.copyOf(full.aj, n), java.util.Arrays.copyOf(full.bj, n));
+    }
+    
+    /**
+     * Approximates a real function on the interval [0,2π] with a Fourier polynomial of degree n, choosing the number of
+     * subintervals for the trapezium rule adaptively.
+     * 
+     * @param g the RealFunction object to be approximated.
+     * @param n the degree of the resulting Fourier polynomial.
+     * @param tolerance the largest acceptable change in the polynomial between one grid and the next.
+     * @return a FourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if n is negative or tolerance is not positive.
+     * @see #approximateAdaptiveResolution(RealFunction, int, double, TransformOptions)
+     */
+    public static FourierPolynomial approximateAdaptiveResolution (RealFunction g, int n, double tolerance)
+    {
+        return approximateAdaptiveResolution(g, n, tolerance, new TransformOptions());
+    }
+    
+    /**
+     * Approximates a real function on the interval [0,2π] with a Fourier polynomial of degree n, choosing the number of
+     * subintervals for the trapezium rule adaptively rather than taking it from the options. 
+     * The first grid is the smallest power of two above 2n+1 subintervals, so that every coefficient is below the 
+     * Nyquist frequency. The number of subintervals is then doubled until the coefficients converge. The grids are 
+     * nested, so each doubling keeps the samples already taken and only evaluates g at the new midpoints.
+     * The coefficients have converged when the change in the polynomial, measured as |Δa0|/2 + Σ (|Δa_j| + |Δb_j|), 
+     * is at most the tolerance; this bounds the change in its value at any point and is dominated by the aliasing 
+     * error of the coarser grid. The last change is recorded as the error estimate in the options, along with the 
+     * number of evaluations. If the grid reaches MAX_ADAPTIVE_SUBINTERVALS without converging, the finest 
+     * approximation is returned and the error estimate shows how far it is from the tolerance.
+     * The samples are kept in the buffers of the options, which grow with the grid, so repeated calls with the same 
+     * options allocate only the coefficients.
+     * 
+     * @param g the RealFunction object to be approximated.
+     * @param n the degree of the resulting Fourier polynomial.
+     * @param tolerance the largest acceptable change in the polynomial between one grid and the next.
+     * @param options the pool to use, and where the number of evaluations and the error estimate are recorded.
+     * @return a FourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if n is negative or tolerance is not positive.
+     * @see TransformOptions#getErrorEstimate()
+     */
+    public static FourierPolynomial approximateAdaptiveResolution (RealFunction g, int n, double tolerance, TransformOptions options)
+    {
+        if (n < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        if (!(tolerance > 0))
+        {
+            throw new java.lang.IllegalArgumentException("tolerance must be positive");
+        }
+        int subInt = Math.max(MIN_ADAPTIVE_SUBINTERVALS, FFT.nextPowerOfTwo(2*n + 2));
+        FourierMetrics metrics = FourierMetrics.begin("FourierTransformer.approximateAdaptiveResolution");
+        try
+        {
+            ForkJoinPool pool = options.getPool();
+        
+            double[] samples = options.sampleBuffer(subInt);
+            sample(g, samples, subInt, pool, g instanceof BatchRealFunction ? options.nodes(subInt) : null);
+        
+            // The coefficients of the last two grids, swapped after each doubling.
+            double[] aj = new double[n];
+            double[] bj = new double[n];
+            double[] coarseA = new double[n];
+            double[] coarseB = new double[n];
+            double a0 = transform(samples, subInt, n, options, aj, bj);
+            double change = Double.POSITIVE_INFINITY;
+        
+            while (change > tolerance && subInt < MAX_ADAPTIVE_SUBINTERVALS)
             {
-                // Adds the g(a) and g(b) terms for each value of j.
-                aj[j-1] += h*( g.valueAt(0.0)*Math.cos(0.0) + g.valueAt(2.0*Math.PI)*Math.cos(j*2.0*Math.PI) )/(2.0*Math.PI); // Start and end points.
-                bj[j-1] += h*( g.valueAt(0.0)*Math.sin(0.0) + g.valueAt(2.0*Math.PI)*Math.sin(j*2.0*Math.PI) )/(2.0*Math.PI); // Start and end points.
-                
-                for (int i=1; i<subInt; i++)
+                samples = refine(g, subInt, options);
+                subInt *= 2;
+                double[] swap = coarseA;
+                coarseA = aj;
+                aj = swap;
+                swap = coarseB;
+                coarseB = bj;
+                bj = swap;
+                double coarseA0 = a0;
+                a0 = transform(samples, subInt, n, options, aj, bj);
+                change = Math.abs(a0 - coarseA0)/2.0;
+                for (int j=0; j<n; j++)
                 {
-                    aj[j-1] += h*( g.valueAt(i*h)*Math.cos(j*i*h) )/Math.PI; // h*g(x)*cos(j*x)/PI value of the cosine integral at x=i*h
-                    bj[j-1] += h*( g.valueAt(i*h)*Math.sin(j*i*h) )/Math.PI; // h*g(x)*sin(j*x)/PI value of the sine integral at x=i*h
+                    change += Math.abs(aj[j] - coarseA[j]) + Math.abs(bj[j] - coarseB[j]);
                 }
+            }
+        
+            options.setEvaluationCount(subInt+1);
+            options.setErrorEstimate(change);
+            return new FourierPolynomial(a0, aj, bj);
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(subInt+1);
+            }
+        }
+    }
+    
+    /**
+     * Finds the coefficients of degree 1 to n from a full set of trapezium rule samples, storing them in aj and bj.
+     * 
+     * @return the zeroth coefficient.
+     */
+    private static double transform (double[] samples, int subInt, int n, TransformOptions options, double[] aj, double[] bj)
+    {
+        double[] re = options.realBuffer(subInt/2+1);
+        double[] im = options.imaginaryBuffer(subInt/2+1);
+        options.transform(subInt).forward(samples, re, im, options.getPool());
+        return coefficients(re, im, subInt, n, aj, bj);
+    }
     
+    /**
+     * Doubles the number of subintervals, keeping the existing samples at the even points of the finer grid and 
+     * sampling g at the odd points, which are the midpoints of the existing subintervals. The samples are spread out
+     * in place in the sample buffer of the options, and the midpoints and their values use its other buffers.
+     * 
+     * @return the sample buffer, holding the 2*subInt samples of the finer grid.
+     */
+    private static double[] refine (final RealFunction g, int subInt, TransformOptions options)
+    {
+        double[] samples = options.sampleBuffer(2*subInt, subInt);
+        final double[] midpoints = options.pointBuffer(subInt);
+        final double[] values = options.valueBuffer(subInt);
+        double h = (2.0*Math.PI)/ (double) subInt;
+        for (int i=0; i<subInt; i++)
+        {
+            midpoints[i] = (i + 0.5)*h;
+        }
+        Parallel.forRange(options.getPool(), 0, subInt, SAMPLE_GRAIN, new Parallel.Range()
+        {
+            public void run (int from, int to)
+            {
+                BatchRealFunction.sample(g, midpoints, values, from, to-from);
+            }
+        });
+        
+        // Working down from the top, each sample moves to an index no lower than its own and only overwrites
+        // samples which have already been moved.
+        for (int i=subInt-1; i>=0; i--)
+        {
+            samples[2*i] = samples[i];
+            samples[2*i+1] = values[i];
+        }
+        return samples;
+    }
+    
+    /**
+     * Finds the degree at which to truncate a spectrum. The spectrum is treated as having reached its noise floor if 
+     * the median amplitude over the top half of the degrees is within a factor of two of the median over the degrees 
+     * from a sixteenth to an eighth of the way along, as rounding noise is flat while genuine terms keep decaying.
+     * 
+     * @param amplitude the amplitude of the term of degree j at index j-1.
+     * @param tolerance the amplitude below which terms are left out.
+     * @return the last degree whose amplitude is above both the tolerance and four times the noise floor, or zero.
+     */
+    static int truncationDegree (double[] amplitude, double tolerance)
+    {
+        int m = amplitude.length;
+        double floor = 0.0;
+        if (m >= 16)
+        {
+            double low = median(amplitude, m/8, m/4);
+            double high = median(amplitude, m/2, m);
+            if (low < 2.0*high)
+            {
+                floor = high;
             }
-            
-            return new FourierPolynomial(a0,aj,bj);
         }
+        double threshold = Math.max(tolerance, 4.0*floor);
+        int n = m;
+        while (n > 0 && amplitude[n-1] <= threshold)
+        {
+            n--;
+        }
+        return n;
+    }
+    
+    /**
+     * Finds the median of values[from] to values[to-1].
+     */
+    private static double median (double[] values, int from, int to)
+    {
+        double[] sorted = java.util.Arrays.copyOfRange(values, from, to);
+        java.util.Arrays.sort(sorted);
+        return sorted[sorted.length/2];
+    }
+    
+    /**
+     * The fewest subintervals an adaptive approximation starts with.
+     */
+    static final int MIN_ADAPTIVE_SUBINTERVALS = 16;
+    
+    /**
+     * The most subintervals an adaptive approximation goes up to.
+     */
+    public static final int MAX_ADAPTIVE_SUBINTERVALS = 1 << 22;
+    
+    /**
+     * The number of points sampled by each task when sampling in parallel.
+     */
+    private static final int SAMPLE_GRAIN = 256;
+    
+    /**
+     * Samples g at the points i*h for 1 <= i < subInt, storing the mean of g(0) and g(2π) at index 0.
+     * If g is a BatchRealFunction the points are passed to it a chunk at a time.
+     * 
+     * @param g the RealFunction object to be sampled.
+     * @param samples array of at least subInt values to store the samples in.
+     * @param subInt the number of subintervals.
+     * @param pool the pool to sample on, or null to sample on the calling thread.
+     * @param nodes the points i*h for 0 <= i < subInt, or null to sample one point at a time.
+     */
+    static void sample (final RealFunction g, final double[] samples, int subInt, ForkJoinPool pool, final double[] nodes)
+    {
+        final double h = (2.0*Math.PI)/ (double) subInt;
+        samples[0] = ( g.valueAt(0.0) + g.valueAt(2.0*Math.PI) )/2.0;
+        Parallel.forRange(pool, 1, subInt, SAMPLE_GRAIN, new Parallel.Range()
+        {
+            public void run (int from, int to)
+            {
+                if (nodes != null)
+                {
+                    ((BatchRealFunction) g).valueAt(nodes, samples, from, to-from);
+                    return;
+                }
+                for (int i=from; i<to; i++)
+                {
+                    samples[i] = g.valueAt(i*h);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Scales the transform of the trapezium rule samples into the coefficients of a Fourier polynomial.
+     * 
+     * @param re the real parts of the first subInt/2+1 values of the transform.
+     * @param im the imaginary parts of the first subInt/2+1 values of the transform.
+     * @param subInt the number of subintervals used.
+     * @param n the degree of the resulting Fourier polynomial.
+     * @return the Fourier polynomial of degree n.
+     */
+    static FourierPolynomial coefficients (double[] re, double[] im, int subInt, int n)
+    {
+        double[] aj = new double[n];
+        double[] bj = new double[n];
+        double a0 = coefficients(re, im, subInt, n, aj, bj);
+        return new FourierPolynomial(a0,aj,bj);
+    }
+    
+    /**
+     * Scales the transform of the trapezium rule samples into the coefficients of degree 1 to n, storing them in aj and bj.
+     * 
+     * @return the zeroth coefficient.
+     */
+    static double coefficients (double[] re, double[] im, int subInt, int n, double[] aj, double[] bj)
+    {
+        return coefficients(re, im, subInt, n, aj, bj, 0);
+    }
+    
+    /**
+     * Scales the transform of the trapezium rule samples into the coefficients of degree 1 to n, storing the jth in 
+     * aj[offset+j-1] and bj[offset+j-1].
+     * 
+     * @return the zeroth coefficient.
+     */
+    static double coefficients (double[] re, double[] im, int subInt, int n, double[] aj, double[] bj, int offset)
+    {
+        double h = (2.0*Math.PI)/ (double) subInt;
+        double a0 = h*re[0]/Math.PI;
         
+        // Below the Nyquist frequency the coefficients are a direct scaling of the transform.
+        int direct = Math.min(n, subInt/2);
+        Kernels.scale(re, 1, aj, offset, h/Math.PI, direct);
+        Kernels.scale(im, 1, bj, offset, -h/Math.PI, direct);
+        for (int j=direct+1; j<=n; j++)
+        {
+            // The transform is periodic in j with period subInt, and the upper half is the conjugate of the lower half.
+            int k = j % subInt;
+            if (k <= subInt/2)
+            {
+                aj[offset+j-1] = h*re[k]/Math.PI;
+                bj[offset+j-1] = -h*im[k]/Math.PI;
+            }
+            else
+            {
+                aj[offset+j-1] = h*re[subInt-k]/Math.PI;
+                bj[offset+j-1] = h*im[subInt-k]/Math.PI;
+            }
+        }
+        return a0;
     } 
 }
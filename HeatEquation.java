@@ -1,5 +1,11 @@
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Used to estimate the solution of the heat equation of a given RealFunction object at a point or as a FourierPolynomial object.
+ * 
+ * The term of degree j decays by exp(-αj²t), so as time passes fewer and fewer terms matter. Solutions are truncated 
+ * at the lowest degree for which the terms left out are within a tolerance, by default the rounding error of the 
+ * solution, so evaluating and storing them gets cheaper as the solution diffuses.
  */
 public class HeatEquation
 {
@@ -18,6 +24,32 @@ public class HeatEquation
      */
     final int n;
     
+    /**
+     * The number of subintervals and the pool used to approximate g.
+     */
+    private final int subInt;
+    private final ForkJoinPool pool;
+    
+    /**
+     * The estimated error in the approximation of g when its degree was chosen to meet a tolerance, and NaN otherwise.
+     */
+    final double errorEstimate;
+    
+    /**
+     * The Fourier polynomial approximating g, computed by the first call which needs it.
+     */
+    private volatile FourierPolynomial initial;
+    
+    /**
+     * Σ (|a_i| + |b_i|) over i > j of the approximation of g at index j, for 0 <= j <= n, found the first time it is needed.
+     */
+    private volatile double[] tails;
+    
+    /**
+     * The cut-off degree and decay factors of the most recent time used, reused while calls keep asking for the same time.
+     */
+    private volatile Decay decay;
+    
     /**
      * Constructor for the HeatEquation class. 
      * 
@@ -25,6 +57,23 @@ public class HeatEquation
      * @throws IllegalArgumentException if degree is negative.
      */
     public HeatEquation (double diffusivity, RealFunction initialCondition, int degree)
+    {
+        this(diffusivity, initialCondition, degree, null);
+    }
+    
+    /**
+     * Constructor for the HeatEquation class which approximates the initial condition with the number of subintervals 
+     * and the pool of the options. These are read when the object is made, so the options may be changed or reused 
+     * afterwards.
+     * 
+     * @param diffusivity the diffusivity α.
+     * @param initialCondition the 2π-periodic initial condition.
+     * @param degree the degree of the Fourier polynomials.
+     * @param options the number of subintervals and the pool to use, or null for the defaults of TransformOptions.
+     * @throws IllegalArgumentException if diffusivity is not greater than zero.
+     * @throws IllegalArgumentException if degree is negative.
+     */
+    public HeatEquation (double diffusivity, RealFunction initialCondition, int degree, TransformOptions options)
     {
         if (diffusivity <= 0)
         {
@@ -39,11 +88,189 @@ public class HeatEquation
             throw new java.lang.IllegalArgumentException("n cannot be negative");
         }
         n = degree;
+        if (options == null)
+        {
+            options = new TransformOptions();
+        }
+        subInt = options.getSubintervals();
+        pool = options.getPool();
+        errorEstimate = Double.NaN;
+    }
+    
+    /**
+     * Constructor for the HeatEquation class from an approximation of g which is already known.
+     */
+    private HeatEquation (double diffusivity, RealFunction initialCondition, FourierPolynomial f, double error)
+    {
+        alpha = diffusivity;
+        g = initialCondition;
+        n = f.aj.length;
+        subInt = 0;
+        pool = null;
+        errorEstimate = error;
+        initial = f;
+    }
+    
+    /**
+     * Makes a HeatEquation object which chooses the degree from how quickly the Fourier coefficients of the initial 
+     * condition decay, leaving out the terms whose amplitude is below the tolerance. Since the terms only shrink as 
+     * time passes, the error in the initial condition bounds the error in the solution at later times.
+     * g is transformed straight away to find the degree.
+     * 
+     * @param diffusivity the diffusivity α.
+     * @param initialCondition the 2π-periodic initial condition.
+     * @param tolerance the amplitude below which terms of the initial condition are left out.
+     * @return the HeatEquation object.
+     * @throws IllegalArgumentException if diffusivity is not greater than zero.
+     * @throws IllegalArgumentException if tolerance is not positive.
+     * @see FourierTransformer#approximateToTolerance(RealFunction, double, TransformOptions)
+     */
+    public static HeatEquation withTolerance (double diffusivity, RealFunction initialCondition, double tolerance)
+    {
+        if (diffusivity <= 0)
+        {
+            throw new java.lang.IllegalArgumentException("alpha must be greater than zero");
+        }
+        TransformOptions options = new TransformOptions();
+        FourierPolynomial f = FourierTransformer.approximateToTolerance(initialCondition, tolerance, options);
+        return new HeatEquation(diffusivity, initialCondition, f, options.getErrorEstimate());
+    }
+    
+    /**
+     * Returns the estimated largest error in the approximation of the initial condition, when the degree was chosen 
+     * to meet a tolerance.
+     * 
+     * @return the error estimate, or NaN if the degree was given.
+     */
+    public double getErrorEstimate ()
+    {
+        return errorEstimate;
+    }
+    
+    /**
+     * Returns the degree of the Fourier polynomials used.
+     * 
+     * @return the degree.
+     */
+    public int getDegree ()
+    {
+        return n;
+    }
+    
+    /**
+     * Returns the Fourier polynomial approximating g. It is found with the approximate method in the FourierTransformer
+     * class the first time it is needed and then kept, so that each HeatEquation object transforms g only once.
+     * 
+     * @return the approximation of the initial condition, which must not be modified.
+     */
+    FourierPolynomial initialPolynomial ()
+    {
+        FourierPolynomial f = initial;
+        if (f == null)
+        {
+            synchronized (this)
+            {
+                f = initial;
+                if (f == null)
+                {
+                    f = FourierTransformer.approximate(g, n, new TransformOptions(subInt).setPool(pool));
+                    initial = f;
+                }
+            }
+        }
+        return f;
+    }
+    
+    /**
+     * Returns the sums of the amplitudes |a_i| + |b_i| of the approximation of g over i > j, for 0 <= j <= n.
+     */
+    private double[] amplitudeTails ()
+    {
+        double[] tail = tails;
+        if (tail == null)
+        {
+            FourierPolynomial f = initialPolynomial();
+            tail = new double[n+1];
+            for (int j=n; j>=1; j--)
+            {
+                tail[j-1] = tail[j] + Math.abs(f.aj[j-1]) + Math.abs(f.bj[j-1]);
+            }
+            tails = tail;
+        }
+        return tail;
+    }
+    
+    /**
+     * Returns the rounding error of the solution, which is the default tolerance for truncating it.
+     */
+    private double roundingTolerance ()
+    {
+        return Math.ulp(1.0)*(Math.abs(initialPolynomial().a0)/2.0 + amplitudeTails()[0]);
+    }
+    
+    /**
+     * Finds the lowest degree N for which the terms of the solution at time t above degree N add up to at most the 
+     * tolerance anywhere. Their sum is bounded by exp(-α(N+1)²t) Σ (|a_j| + |b_j|) over j > N, which falls as N 
+     * rises, so N is found by bisection without calculating a decay factor for every degree.
+     * 
+     * @param t time passed.
+     * @param tolerance the largest error allowed in the truncated solution.
+     * @return the cut-off degree, at most getDegree().
+     * @throws IllegalArgumentException if t or tolerance is negative.
+     */
+    public int getCutoffDegree (double t, double tolerance)
+    {
+        if (t < 0)
+        {
+            throw new java.lang.IllegalArgumentException("t must be non-negative");
+        }
+        if (!(tolerance >= 0))
+        {
+            throw new java.lang.IllegalArgumentException("tolerance cannot be negative");
+        }
+        double[] tail = amplitudeTails();
+        int low = 0;
+        int high = n;
+        while (low < high)
+        {
+            int mid = (low+high) >>> 1;
+            if (Math.exp(-alpha*(mid+1.0)*(mid+1.0)*t)*tail[mid] <= tolerance)
+            {
+                high = mid;
+            }
+            else
+            {
+                low = mid+1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Returns the cut-off degree at the rounding error and the decay factors exp(-αj²t) up to it, stored at index j-1.
+     * They are kept for the last time asked for so repeated calls at the same time do not find them again, and the 
+     * factors of times asked for more than once are shared with every other solver through the TableCache.
+     * 
+     * @param t time passed.
+     * @return the cut-off degree and decay factors, which must not be modified.
+     */
+    private Decay decay (double t)
+    {
+        Decay d = decay;
+        if (d == null || d.t != t)
+        {
+            int degree = getCutoffDegree(t, roundingTolerance());
+            d = new Decay(t, degree, TableCache.decay(alpha, degree, t));
+            decay = d;
+        }
+        return d;
     }
     
     /**
      * Approximates the function g with a Fourier polynomial using the approximate method in the FourierTranformer class.
      * Uses the solution to the heat equation given in equation (4) to give the value of u at a point x at time t.
+     * The approximation of g and the decay factors for t are reused between calls, so each call after the first is O(N) 
+     * for the cut-off degree N at the rounding error.
      * 
      * @param x the point in space.
      * @param t time passed.
@@ -58,19 +285,28 @@ public class HeatEquation
         {
             throw new java.lang.IllegalArgumentException("t must be non-negative");
         }
-        FourierPolynomial f = FourierTransformer.approximate(g, n);
-        double u = f.a0/2.0;
-        
-        for (int j=1; j<n; j++)
+        FourierMetrics metrics = FourierMetrics.begin("HeatEquation.evaluateSolution");
+        try
+        {
+            FourierPolynomial f = initialPolynomial();
+            Decay d = decay(t);
+            // From Equation 4 on the project description, each term decays by exp(-αj²t).
+            double u = f.a0/2.0 + FourierPolynomial.recurrenceSum(f.aj, f.bj, d.factors, d.degree, x, false);
+            return u;
+        }
+        finally
         {
-            u += f.aj[j-1]*Math.exp(-alpha*j*j*t) + f.bj[j-1]*Math.exp(-alpha*j*j*t); // From Equation 4 on the project description.
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
         }
-        return u;
     }
     
     /**
      * Approximates the function g with a Fourier polynomial using the approximate method in the FourierTranformer class.
      * Uses the solution to the heat equation given in equation (4) to represent the temperature profile after time t with a FourierPolynomial object.
+     * Terms which have decayed below the rounding error are left out, so the degree falls as t grows.
      * 
      * @param t time passed.
      * @return a FourierPolynomial representing the change after time t.
@@ -82,13 +318,178 @@ public class HeatEquation
         {
             throw new java.lang.IllegalArgumentException("t must be non-negative");
         }
-        FourierPolynomial f = FourierTransformer.approximate(g, n);
+        FourierMetrics metrics = FourierMetrics.begin("HeatEquation.getSolution");
+        try
+        {
+            Decay d = decay(t);
+            FourierPolynomial u = truncatedSolution(d.degree, d.factors);
+            return u;
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+    
+    /**
+     * Represents the temperature profile after time t with a FourierPolynomial object of the lowest degree whose error 
+     * from leaving out the higher terms is at most the tolerance anywhere.
+     * 
+     * @param t time passed.
+     * @param tolerance the largest error allowed from leaving out terms.
+     * @return a FourierPolynomial representing the change after time t.
+     * @throws IllegalArgumentException if t or tolerance is negative.
+     * @see #getCutoffDegree(double, double)
+     */
+    public FourierPolynomial getSolution (double t, double tolerance)
+    {
+        int degree = getCutoffDegree(t, tolerance);
+        FourierMetrics metrics = FourierMetrics.begin("HeatEquation.getSolution");
+        try
+        {
+            FourierPolynomial u = truncatedSolution(degree, TableCache.decay(alpha, degree, t));
+            return u;
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+    
+    /**
+     * Multiplies the terms of the approximation of g up to a degree by their decay factors.
+     */
+    private FourierPolynomial truncatedSolution (int degree, double[] factors)
+    {
+        FourierPolynomial f = initialPolynomial();
+        double[] aj = new double[degree];
+        double[] bj = new double[degree];
         
-        for (int j=1; j<n; j++)
+        for (int j=1; j<=degree; j++)
         {
-            f.aj[j-1] *= Math.exp(-alpha*j*j*t);
-            f.bj[j-1] *= Math.exp(-alpha*j*j*t);
+            aj[j-1] = f.aj[j-1]*factors[j-1];
+            bj[j-1] = f.bj[j-1]*factors[j-1];
+        }
+        return new FourierPolynomial(f.a0,aj,bj);
+    }
+    
+    /**
+     * Calculates the solution on the grid of m points x_k = 2πk/m at each of a sequence of times, passing each time slice
+     * to a consumer as soon as it is found. The coefficients are advanced from one time to the next by multiplying them
+     * by the decay factors exp(-αj²Δt) of the time step, and each slice is then found with one inverse FFT. Only O(m+n) 
+     * memory is used however many times are given.
+     * 
+     * @param m the number of points in space.
+     * @param times the times to calculate the solution at, in non-decreasing order.
+     * @param consumer receives each slice in turn, in a buffer which is reused for the next slice.
+     * @throws IllegalArgumentException if m is not positive.
+     * @throws IllegalArgumentException if a time is negative or the times are decreasing.
+     * @see SliceConsumer
+     */
+    public void solveOnGrid (int m, double[] times, SliceConsumer consumer)
+    {
+        if (m < 1)
+        {
+            throw new java.lang.IllegalArgumentException("m must be positive");
+        }
+        FourierMetrics metrics = FourierMetrics.begin("HeatEquation.solveOnGrid");
+        try
+        {
+            FourierPolynomial f = initialPolynomial();
+            double[] aj = f.aj.clone();
+            double[] bj = f.bj.clone();
+            double[] step = new double[n];
+            double stepDt = Double.NaN;
+        
+            FFT fft = TableCache.fft(m);
+            double[] re = new double[m];
+            double[] im = new double[m];
+            double[] slice = new double[m];
+        
+            double previous = 0.0;
+            for (int i=0; i<times.length; i++)
+            {
+                double t = times[i];
+                if (t < previous)
+                {
+                    throw new java.lang.IllegalArgumentException("times must be non-negative and non-decreasing");
+                }
+                double dt = t - previous;
+                if (dt > 0)
+                {
+                    // Equal time steps share the same decay factors. The steps are usually all different or all the same, 
+                    // so the factors are calculated here rather than taken from the TableCache.
+                    if (dt != stepDt)
+                    {
+                        for (int j=1; j<=n; j++)
+                        {
+                            step[j-1] = Math.exp(-alpha*j*j*dt);
+                        }
+                        stepDt = dt;
+                    }
+                    for (int j=0; j<n; j++)
+                    {
+                        aj[j] *= step[j];
+                        bj[j] *= step[j];
+                    }
+                }
+                previous = t;
+            
+                FourierPolynomial.gridValues(f.a0, aj, bj, false, slice, 0, fft, re, im);
+                consumer.accept(i, t, slice);
+            }
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+    
+    /**
+     * Calculates the solution on the grid of m points x_k = 2πk/m at each of a sequence of times, storing the slice for
+     * times[i] in out[i*m] to out[i*m+m-1].
+     * 
+     * @param m the number of points in space.
+     * @param times the times to calculate the solution at, in non-decreasing order.
+     * @param out array of at least m*times.length values to store the slices in.
+     * @throws IllegalArgumentException if m is not positive.
+     * @throws IllegalArgumentException if a time is negative or the times are decreasing.
+     * @see #solveOnGrid(int, double[], SliceConsumer)
+     */
+    public void solveOnGrid (final int m, double[] times, final double[] out)
+    {
+        solveOnGrid(m, times, new SliceConsumer()
+        {
+            public void accept (int step, double t, double[] values)
+            {
+                System.arraycopy(values, 0, out, step*m, m);
+            }
+        });
+    }
+    
+    /**
+     * The cut-off degree and decay factors for a single time.
+     */
+    private static class Decay
+    {
+        final double t;
+        final int degree;
+        final double[] factors;
+        
+        Decay (double time, int cutoff, double[] decayFactors)
+        {
+            t = time;
+            degree = cutoff;
+            factors = decayFactors;
         }
-        return f;
     }
 }
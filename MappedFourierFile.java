@@ -0,0 +1,204 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by FourierIO by mapping it into memory, so each polynomial can be evaluated where it lies in
+ * the file without copying its coefficients onto the heap.
+ *
+ * A single mapping cannot be longer than 2 GB, so the file is mapped in segments each holding whole polynomials.
+ * The views returned only read from the mapping and are safe to use from several threads at once.
+ *
+ * @see FourierIO
+ */
+public class MappedFourierFile implements Closeable
+{
+    /**
+     * The longest segment mapped.
+     */
+    static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+    /**
+     * The open file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Whether the coefficients are stored as float.
+     */
+    private final boolean float32;
+
+    /**
+     * The offset of each polynomial in the file.
+     */
+    private final long[] offsets;
+
+    /**
+     * The mapped segments.
+     */
+    private final ByteBuffer[] segments;
+
+    /**
+     * The offset in the file of the start of each segment.
+     */
+    private final long[] segmentStart;
+
+    /**
+     * The segment holding each polynomial.
+     */
+    private final int[] segmentOf;
+
+    /**
+     * Constructor for the MappedFourierFile class, which opens and maps a file.
+     *
+     * @param path the file to read.
+     * @throws IOException if the file cannot be read or is not in the format written by FourierIO.
+     */
+    public MappedFourierFile (Path path) throws IOException
+    {
+        this(path, MAX_SEGMENT);
+    }
+
+    /**
+     * Constructor for the MappedFourierFile class using segments of at most a given length.
+     */
+    MappedFourierFile (Path path, long maxSegment) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer header = read(0, FourierIO.HEADER);
+            if (header.getInt() != FourierIO.MAGIC)
+            {
+                throw new IOException("not a Fourier polynomial file");
+            }
+            short version = header.getShort();
+            if (version != FourierIO.VERSION)
+            {
+                throw new IOException("unsupported version " + version);
+            }
+            float32 = (header.getShort() & FourierIO.FLOAT32) != 0;
+            long count = header.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE)
+            {
+                throw new IOException("invalid number of polynomials " + count);
+            }
+
+            offsets = new long[(int) count];
+            ByteBuffer table = read(FourierIO.HEADER, 8L*count);
+            for (int i=0; i<count; i++)
+            {
+                offsets[i] = table.getLong();
+            }
+
+            // Groups consecutive polynomials into segments no longer than maxSegment.
+            segmentOf = new int[offsets.length];
+            long[] starts = new long[offsets.length + 1];
+            long[] ends = new long[offsets.length + 1];
+            int segmentCount = 0;
+            long fileLength = channel.size();
+            for (int i=0; i<offsets.length; i++)
+            {
+                long end = i+1 < offsets.length ? offsets[i+1] : fileLength;
+                if (end - offsets[i] > maxSegment)
+                {
+                    throw new IOException("polynomial " + i + " is longer than a segment");
+                }
+                if (segmentCount == 0 || end - starts[segmentCount-1] > maxSegment)
+                {
+                    starts[segmentCount] = offsets[i];
+                    segmentCount++;
+                }
+                ends[segmentCount-1] = end;
+                segmentOf[i] = segmentCount-1;
+            }
+
+            segments = new ByteBuffer[segmentCount];
+            segmentStart = new long[segmentCount];
+            for (int s=0; s<segmentCount; s++)
+            {
+                segmentStart[s] = starts[s];
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, starts[s], ends[s] - starts[s])
+                                     .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads part of the file onto the heap.
+     */
+    private ByteBuffer read (long position, long length) throws IOException
+    {
+        if (length > Integer.MAX_VALUE)
+        {
+            throw new IOException("offset table too long");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the number of polynomials in the file.
+     *
+     * @return the number of polynomials.
+     */
+    public int size ()
+    {
+        return offsets.length;
+    }
+
+    /**
+     * Returns whether the coefficients are stored as float.
+     *
+     * @return true if the coefficients are stored as float, false if they are stored as double.
+     */
+    public boolean isFloat32 ()
+    {
+        return float32;
+    }
+
+    /**
+     * Returns a view of one polynomial which reads its coefficients directly from the mapped file.
+     *
+     * @param i the position of the polynomial in the file.
+     * @return a view of the ith polynomial.
+     * @throws IndexOutOfBoundsException if i is not the position of a polynomial in the file.
+     */
+    public MappedFourierPolynomial get (int i)
+    {
+        if (i < 0 || i >= offsets.length)
+        {
+            throw new java.lang.IndexOutOfBoundsException("no polynomial " + i);
+        }
+        ByteBuffer segment = segments[segmentOf[i]];
+        int position = (int) (offsets[i] - segmentStart[segmentOf[i]]);
+        return new MappedFourierPolynomial(segment, position, float32);
+    }
+
+    /**
+     * Closes the file. The mappings, and so the views, stay valid until they are garbage collected.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close () throws IOException
+    {
+        channel.close();
+    }
+}
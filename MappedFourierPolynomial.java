@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A Fourier polynomial whose coefficients are read directly from a buffer, usually a file mapped by MappedFourierFile,
+ * rather than copied onto the heap.
+ *
+ * @see MappedFourierFile
+ */
+public class MappedFourierPolynomial extends RealFunction
+{
+    /**
+     * The buffer holding the coefficients, read only with absolute positions.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The position of a0 in the buffer.
+     */
+    private final int base;
+
+    /**
+     * The number of bytes used by each coefficient.
+     */
+    private final int width;
+
+    /**
+     * The degree of the Fourier polynomial.
+     */
+    private final int n;
+
+    /**
+     * The coefficients as read by the recurrence of FourierPolynomial.
+     */
+    private final FourierPolynomial.Coefficients source = new FourierPolynomial.Coefficients()
+    {
+        public double cosine (int j)
+        {
+            return coefficient(j);
+        }
+
+        public double sine (int j)
+        {
+            return coefficient(n+j);
+        }
+    };
+
+    /**
+     * Constructor for the MappedFourierPolynomial class.
+     *
+     * @param data the buffer holding the polynomial in the format written by FourierIO.
+     * @param position the position of the polynomial, which is the position of its degree.
+     * @param float32 whether the coefficients are stored as float.
+     */
+    MappedFourierPolynomial (ByteBuffer data, int position, boolean float32)
+    {
+        buffer = data;
+        n = data.getInt(position);
+        base = position + 4;
+        width = float32 ? 4 : 8;
+    }
+
+    /**
+     * Reads the coefficient at a position counted from a0, where a_j is at j and b_j at n+j.
+     */
+    private double coefficient (int k)
+    {
+        int position = base + k*width;
+        return width == 4 ? buffer.getFloat(position) : buffer.getDouble(position);
+    }
+
+    /**
+     * Returns the degree of the Fourier polynomial.
+     *
+     * @return the degree.
+     */
+    public int getDegree ()
+    {
+        return n;
+    }
+
+    /**
+     * Returns the the jth coefficient of the Fourier polynomial.
+     *
+     * @param j the term of the coefficient.
+     * @param wantB determines whether to return the coefficient of the cosine or sine value.
+     * @return the jth coefficient.
+     * @throws IllegalArgumentException if j is negative.
+     */
+    public double getCoefficient (int j, boolean wantB)
+    {
+        if (j < 0)
+        {
+            throw new java.lang.IllegalArgumentException("j must be non-negative");
+        }
+        if (j > n)
+        {
+            return 0.0;
+        }
+        if (j == 0)
+        {
+            return coefficient(0);
+        }
+        return wantB ? coefficient(n+j) : coefficient(j);
+    }
+
+    /**
+     * Calculates the value of the Fourier polynomial at a point using the recurrence described in
+     * FourierPolynomial.setRecurrenceEvaluation.
+     *
+     * @param x the point to consider.
+     * @return the value of the Fourier polynomial at the point x.
+     */
+    public double valueAt (double x)
+    {
+        return coefficient(0)/2.0 + recurrenceSum(x, false);
+    }
+
+    /**
+     * Calculates the value of the Fourier polynomials derivative at a point.
+     *
+     * @param x the point to consider.
+     * @return the value of the Fourier polynomials derivative at the point x.
+     */
+    public double derivativeValueAt (double x)
+    {
+        return recurrenceSum(x, true);
+    }
+
+    /**
+     * Sums the non-constant terms at a point with the recurrence of FourierPolynomial, reading each coefficient
+     * straight from the buffer.
+     */
+    private double recurrenceSum (double x, boolean derivative)
+    {
+        FourierPolynomial.Recurrence r = new FourierPolynomial.Recurrence(x);
+        r.run(source, 1, n, derivative);
+        return r.sum();
+    }
+
+    /**
+     * Copies the coefficients onto the heap.
+     *
+     * @return the same Fourier polynomial as a FourierPolynomial object.
+     */
+    public FourierPolynomial toPolynomial ()
+    {
+        double[] aj = new double[n];
+        double[] bj = new double[n];
+        for (int j=1; j<=n; j++)
+        {
+            aj[j-1] = coefficient(j);
+            bj[j-1] = coefficient(n+j);
+        }
+        return new FourierPolynomial(coefficient(0), aj, bj);
+    }
+}
@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A MetricsListener which keeps counts, totals and a latency histogram for each operation. The statistics can be read 
+ * with snapshot or through JMX once the collector has been registered.
+ * 
+ * For example
+ * <pre>
+ *   MetricsCollector collector = new MetricsCollector(true);
+ *   FourierMetrics.setListener(collector);
+ *   collector.register("FourierPolynomial:type=Metrics");
+ * </pre>
+ */
+public class MetricsCollector implements MetricsListener, MetricsCollectorMBean
+{
+    /**
+     * Whether the bytes allocated by each operation are measured.
+     */
+    private final boolean allocation;
+    
+    /**
+     * The statistics of each operation.
+     */
+    private final ConcurrentHashMap<String, Statistics> operations = new ConcurrentHashMap<String, Statistics>();
+    
+    /**
+     * Constructor for the MetricsCollector class.
+     * 
+     * @param measureAllocation whether to measure the bytes allocated by each operation, on the calling thread only.
+     */
+    public MetricsCollector (boolean measureAllocation)
+    {
+        allocation = measureAllocation;
+    }
+    
+    /**
+     * Records one completed operation.
+     * 
+     * @param operation the name of the operation.
+     * @param evaluations the number of evaluations of a user supplied RealFunction made by the operation.
+     * @param nanos the time taken by the operation in nanoseconds.
+     * @param bytes the number of bytes allocated by the operation, or -1 if it was not measured.
+     */
+    public void record (String operation, long evaluations, long nanos, long bytes)
+    {
+        Statistics s = operations.get(operation);
+        if (s == null)
+        {
+            Statistics created = new Statistics();
+            s = operations.putIfAbsent(operation, created);
+            if (s == null)
+            {
+                s = created;
+            }
+        }
+        s.calls.increment();
+        s.evaluations.add(evaluations);
+        s.nanos.add(nanos);
+        if (bytes > 0)
+        {
+            s.bytes.add(bytes);
+        }
+        // Bucket i holds times with i significant bits, which is at most 63 for a non-negative long.
+        s.histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+    }
+    
+    /**
+     * Returns whether the bytes allocated by each operation are measured.
+     * 
+     * @return true if allocation is measured.
+     */
+    public boolean measuresAllocation ()
+    {
+        return allocation;
+    }
+    
+    /**
+     * Copies the statistics recorded so far.
+     * 
+     * @return the statistics of each operation, ordered by the name of the operation.
+     */
+    public Map<String, OperationStatistics> snapshot ()
+    {
+        Map<String, OperationStatistics> result = new TreeMap<String, OperationStatistics>();
+        for (Map.Entry<String, Statistics> entry : operations.entrySet())
+        {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+    
+    /**
+     * Registers the collector with the platform MBean server so it can be read through JMX.
+     * 
+     * @param objectName the JMX object name to register under, for example "FourierPolynomial:type=Metrics".
+     * @throws JMException if the name is invalid or already registered.
+     */
+    public void register (String objectName) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(objectName));
+    }
+    
+    /**
+     * Returns the names of the operations recorded so far, in alphabetical order.
+     * 
+     * @return the operation names.
+     */
+    public String[] getOperations ()
+    {
+        return snapshot().keySet().toArray(new String[0]);
+    }
+    
+    /**
+     * Returns the number of times an operation has finished, including those which ended with an exception.
+     * 
+     * @param operation the name of the operation.
+     * @return the number of calls, or zero if it has not run.
+     */
+    public long getCallCount (String operation)
+    {
+        return statistics(operation).getCallCount();
+    }
+    
+    /**
+     * Returns the total number of evaluations of user supplied functions made by an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the number of function evaluations, or zero if it has not run.
+     */
+    public long getEvaluationCount (String operation)
+    {
+        return statistics(operation).getEvaluationCount();
+    }
+    
+    /**
+     * Returns the mean wall-clock time taken by an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the mean time in nanoseconds, or zero if it has not run.
+     */
+    public double getMeanNanos (String operation)
+    {
+        return statistics(operation).getMeanNanos();
+    }
+    
+    /**
+     * Returns the total number of bytes allocated by an operation on the threads which called it. Allocation by the 
+     * worker threads of a pool is not included, and nothing is counted unless the collector measures allocation.
+     * 
+     * @param operation the name of the operation.
+     * @return the number of bytes allocated, or zero if it has not run.
+     */
+    public long getBytesAllocated (String operation)
+    {
+        return statistics(operation).getBytesAllocated();
+    }
+    
+    /**
+     * Returns the latency histogram of an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the histogram counts.
+     * @see OperationStatistics#getLatencyHistogram()
+     */
+    public long[] getLatencyHistogram (String operation)
+    {
+        return statistics(operation).getLatencyHistogram();
+    }
+    
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset ()
+    {
+        operations.clear();
+    }
+    
+    /**
+     * Returns the current statistics of one operation, which are all zero if it has not run.
+     */
+    private OperationStatistics statistics (String operation)
+    {
+        Statistics s = operations.get(operation);
+        return s == null ? new Statistics().snapshot() : s.snapshot();
+    }
+    
+    /**
+     * The running statistics of one operation.
+     */
+    private static class Statistics
+    {
+        final LongAdder calls = new LongAdder();
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(64);
+        
+        OperationStatistics snapshot ()
+        {
+            long[] counts = new long[histogram.length()];
+            for (int i=0; i<counts.length; i++)
+            {
+                counts[i] = histogram.get(i);
+            }
+            return new OperationStatistics(calls.sum(), evaluations.sum(), nanos.sum(), bytes.sum(), counts);
+        }
+    }
+}
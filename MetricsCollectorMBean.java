@@ -0,0 +1,60 @@
+/**
+ * The JMX management interface of a MetricsCollector.
+ * 
+ * @see MetricsCollector
+ */
+public interface MetricsCollectorMBean
+{
+    /**
+     * Returns the names of the operations recorded so far.
+     * 
+     * @return the operation names.
+     */
+    String[] getOperations ();
+    
+    /**
+     * Returns the number of times an operation has run.
+     * 
+     * @param operation the name of the operation.
+     * @return the number of calls.
+     */
+    long getCallCount (String operation);
+    
+    /**
+     * Returns the number of evaluations of user supplied functions made by an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the number of function evaluations.
+     */
+    long getEvaluationCount (String operation);
+    
+    /**
+     * Returns the mean time taken by an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the mean time in nanoseconds.
+     */
+    double getMeanNanos (String operation);
+    
+    /**
+     * Returns the number of bytes allocated by an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the number of bytes allocated.
+     */
+    long getBytesAllocated (String operation);
+    
+    /**
+     * Returns the latency histogram of an operation.
+     * 
+     * @param operation the name of the operation.
+     * @return the histogram counts.
+     * @see OperationStatistics#getLatencyHistogram()
+     */
+    long[] getLatencyHistogram (String operation);
+    
+    /**
+     * Discards everything recorded so far.
+     */
+    void reset ();
+}
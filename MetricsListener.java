@@ -0,0 +1,27 @@
+/**
+ * Receives a record of each instrumented operation of the project once FourierMetrics.setListener has been called.
+ * 
+ * @see FourierMetrics
+ * @see MetricsCollector
+ */
+public interface MetricsListener
+{
+    /**
+     * Records one completed operation. This is called on the thread which ran the operation, so it must be safe to 
+     * call from several threads at once and should return quickly.
+     * 
+     * @param operation the name of the operation, for example "FourierTransformer.approximate".
+     * @param evaluations the number of evaluations of a user supplied RealFunction made by the operation.
+     * @param nanos the time taken by the operation in nanoseconds.
+     * @param bytes the number of bytes allocated by the operation, or -1 if it was not measured.
+     */
+    void record (String operation, long evaluations, long nanos, long bytes);
+    
+    /**
+     * Returns whether the bytes allocated by each operation should be measured, which costs two calls to the 
+     * ThreadMXBean per operation. Only allocation on the thread which called the operation is measured.
+     * 
+     * @return true to measure allocation.
+     */
+    boolean measuresAllocation ();
+}
@@ -0,0 +1,146 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A fast Fourier transform of complex arrays on a grid with the same number of points m along each of several axes.
+ * The grid is stored flat in row-major order, so the point with indices (i_0, ..., i_{d-1}) is at index
+ * Σ i_a m^(d-1-a) and the last axis is contiguous.
+ *
+ * The transform is separable, so it is done one axis at a time by transforming every line of the grid along that axis
+ * with a one-dimensional FFT. The lines are independent, and are split across the threads of a pool if one is given.
+ * As in FFT, every line is transformed exactly as it would be on a single thread so the result does not depend on the
+ * number of threads. A MultiFFT object keeps no scratch space of its own and can be shared between threads.
+ *
+ * @see FFT
+ */
+public class MultiFFT
+{
+    /**
+     * The number of axes.
+     */
+    final int dimension;
+
+    /**
+     * The number of points along each axis.
+     */
+    final int m;
+
+    /**
+     * The total number of points, m^dimension.
+     */
+    final int size;
+
+    /**
+     * The transform of a single line, copied for each task so that tasks do not share its scratch space.
+     */
+    private final FFT line;
+
+    /**
+     * The number of points transformed by each task when the lines are split across threads.
+     */
+    private static final int GRAIN = 1 << 14;
+
+    /**
+     * Constructor for the MultiFFT class.
+     *
+     * @param dimension the number of axes.
+     * @param length the number of points along each axis.
+     * @throws IllegalArgumentException if dimension or length is not positive, or the grid has more than 2^31-1 points.
+     */
+    public MultiFFT (int dimension, int length)
+    {
+        if (dimension < 1)
+        {
+            throw new java.lang.IllegalArgumentException("dimension must be positive");
+        }
+        this.dimension = dimension;
+        line = TableCache.fft(length);
+        m = length;
+        size = gridSize(dimension, length);
+    }
+
+    /**
+     * Returns the number of points on a grid with m points along each of d axes.
+     *
+     * @throws IllegalArgumentException if there are more than 2^31-1 points.
+     */
+    static int gridSize (int d, int m)
+    {
+        long size = 1;
+        for (int a=0; a<d; a++)
+        {
+            size *= m;
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new java.lang.IllegalArgumentException("a grid of " + m + "^" + d + " points is too large");
+            }
+        }
+        return (int) size;
+    }
+
+    /**
+     * Replaces the values on the grid with their discrete Fourier transform X_k = Σ x_i exp(-2πi k·i/m).
+     *
+     * @param re the real parts of the values, at least m^dimension long.
+     * @param im the imaginary parts of the values, at least m^dimension long.
+     * @param pool the pool to use, or null to calculate the transform on the calling thread.
+     */
+    public void forward (double[] re, double[] im, ForkJoinPool pool)
+    {
+        for (int a=0; a<dimension; a++)
+        {
+            axis(re, im, a, pool);
+        }
+    }
+
+    /**
+     * Replaces the values on the grid with their unnormalised inverse transform x_i = Σ X_k exp(2πi k·i/m).
+     * The result has to be divided by m^dimension to undo the forward transform.
+     *
+     * @param re the real parts of the values, at least m^dimension long.
+     * @param im the imaginary parts of the values, at least m^dimension long.
+     * @param pool the pool to use, or null to calculate the transform on the calling thread.
+     */
+    public void inverse (double[] re, double[] im, ForkJoinPool pool)
+    {
+        // Swapping the real and imaginary parts turns the forward transform into the inverse transform.
+        forward(im, re, pool);
+    }
+
+    /**
+     * Transforms every line of the grid along one axis.
+     */
+    private void axis (final double[] re, final double[] im, int a, ForkJoinPool pool)
+    {
+        int s = 1;
+        for (int b=a+1; b<dimension; b++)
+        {
+            s *= m;
+        }
+        final int stride = s;
+        Parallel.forRange(pool, 0, size/m, Math.max(GRAIN/m, 1), new Parallel.Range()
+        {
+            public void run (int from, int to)
+            {
+                FFT fft = line.copy();
+                double[] lineRe = new double[m];
+                double[] lineIm = new double[m];
+                for (int l=from; l<to; l++)
+                {
+                    // Line l starts at the lth point whose index along this axis is zero.
+                    int start = (l/stride)*stride*m + l%stride;
+                    for (int j=0, p=start; j<m; j++, p+=stride)
+                    {
+                        lineRe[j] = re[p];
+                        lineIm[j] = im[p];
+                    }
+                    fft.forward(lineRe, lineIm);
+                    for (int j=0, p=start; j<m; j++, p+=stride)
+                    {
+                        re[p] = lineRe[j];
+                        im[p] = lineIm[j];
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A real Fourier polynomial in several variables, periodic with period 2π along each axis, with the same degree n
+ * along every axis. It is stored in complex form
+ * <pre>
+ *   f(x) = Σ c_k exp(i k·x)
+ * </pre>
+ * summed over the tensor product of -n <= k_a <= n for each axis a. The coefficients are kept in two flat arrays of
+ * (2n+1)^d real and imaginary parts, with c_k at index Σ (k_a+n)(2n+1)^(d-1-a). Since f is real, c_-k is the conjugate
+ * of c_k. In one dimension c_k = (a_k - i b_k)/2 in terms of the coefficients of FourierPolynomial.
+ *
+ * @see MultiFourierTransformer
+ */
+public class MultiFourierPolynomial
+{
+    /**
+     * The number of variables.
+     */
+    final int dimension;
+
+    /**
+     * The degree along each axis.
+     */
+    final int n;
+
+    /**
+     * The real and imaginary parts of the coefficients c_k.
+     */
+    final double[] re;
+    final double[] im;
+
+    /**
+     * Constructor for the MultiFourierPolynomial class.
+     *
+     * @param dimension the number of variables.
+     * @param degree the degree along each axis.
+     * @param realParts the real parts of the coefficients, (2*degree+1)^dimension long.
+     * @param imaginaryParts the imaginary parts of the coefficients, (2*degree+1)^dimension long.
+     * @throws IllegalArgumentException if dimension is not positive, degree is negative or the arrays are the wrong length.
+     */
+    public MultiFourierPolynomial (int dimension, int degree, double[] realParts, double[] imaginaryParts)
+    {
+        if (dimension < 1)
+        {
+            throw new java.lang.IllegalArgumentException("dimension must be positive");
+        }
+        if (degree < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        int size = MultiFFT.gridSize(dimension, 2*degree+1);
+        if (realParts.length != size || imaginaryParts.length != size)
+        {
+            throw new java.lang.IllegalArgumentException("there must be (2n+1)^dimension coefficients");
+        }
+        this.dimension = dimension;
+        n = degree;
+        re = realParts;
+        im = imaginaryParts;
+    }
+
+    /**
+     * Returns the number of variables.
+     *
+     * @return the dimension.
+     */
+    public int getDimension ()
+    {
+        return dimension;
+    }
+
+    /**
+     * Returns the degree along each axis.
+     *
+     * @return the degree.
+     */
+    public int getDegree ()
+    {
+        return n;
+    }
+
+    /**
+     * Returns the coefficient c_k.
+     *
+     * @param k the frequency along each axis.
+     * @param wantImaginary determines whether to return the real or imaginary part.
+     * @return the real or imaginary part of c_k, which is zero if any |k_a| is above the degree.
+     * @throws IllegalArgumentException if k does not have one entry for each dimension.
+     */
+    public double getCoefficient (int[] k, boolean wantImaginary)
+    {
+        if (k.length != dimension)
+        {
+            throw new java.lang.IllegalArgumentException("k must have one entry for each dimension");
+        }
+        int q = 0;
+        for (int a=0; a<dimension; a++)
+        {
+            if (Math.abs(k[a]) > n)
+            {
+                return 0.0;
+            }
+            q = q*(2*n+1) + k[a] + n;
+        }
+        return wantImaginary ? im[q] : re[q];
+    }
+
+    /**
+     * Calculates the value of the Fourier polynomial at a point.
+     *
+     * @param x the coordinates of the point, one for each dimension.
+     * @return the value of the Fourier polynomial at the point x.
+     * @throws IllegalArgumentException if x does not have one entry for each dimension.
+     */
+    public double valueAt (double[] x)
+    {
+        return value(x, 0.0);
+    }
+
+    /**
+     * Calculates the value at a point with each term damped by exp(-decay |k|²), which is the solution of the heat
+     * equation at time t when decay = αt. The sum is separable, so it is contracted one axis at a time starting from
+     * the last, and the damping is folded into the factors exp(i k_a x_a) of each axis.
+     */
+    double value (double[] x, double decay)
+    {
+        if (x.length != dimension)
+        {
+            throw new java.lang.IllegalArgumentException("x must have one entry for each dimension");
+        }
+        int width = 2*n+1;
+        double[] wr = new double[width];
+        double[] wi = new double[width];
+        double[] sumRe = re;
+        double[] sumIm = im;
+        for (int a=dimension-1; a>=0; a--)
+        {
+            for (int k=0; k<=n; k++)
+            {
+                double damping = Math.exp(-decay*k*k);
+                double c = damping*Math.cos(k*x[a]);
+                double s = damping*Math.sin(k*x[a]);
+                wr[n+k] = c;
+                wi[n+k] = s;
+                wr[n-k] = c;
+                wi[n-k] = -s;
+            }
+            int rows = sumRe.length/width;
+            double[] nextRe = new double[rows];
+            double[] nextIm = new double[rows];
+            for (int r=0; r<rows; r++)
+            {
+                double tr = 0.0;
+                double ti = 0.0;
+                for (int j=0, p=r*width; j<width; j++, p++)
+                {
+                    tr += sumRe[p]*wr[j] - sumIm[p]*wi[j];
+                    ti += sumRe[p]*wi[j] + sumIm[p]*wr[j];
+                }
+                nextRe[r] = tr;
+                nextIm[r] = ti;
+            }
+            sumRe = nextRe;
+            sumIm = nextIm;
+        }
+        return sumRe[0];
+    }
+
+    /**
+     * Calculates the values of the Fourier polynomial on the grid of m points 2πi/m along each axis.
+     *
+     * @param out array of at least m^dimension values to store the value at the grid point with indices i in, in the
+     *            row-major order used by MultiFFT.
+     * @param m the number of points along each axis.
+     * @throws IllegalArgumentException if m is not positive.
+     */
+    public void valueOnGrid (double[] out, int m)
+    {
+        valueOnGrid(out, m, null);
+    }
+
+    /**
+     * Calculates the values of the Fourier polynomial on the grid of m points 2πi/m along each axis, splitting the
+     * transform across the threads of a pool.
+     *
+     * @param out array of at least m^dimension values to store the values in, in the row-major order used by MultiFFT.
+     * @param m the number of points along each axis.
+     * @param pool the pool to use, or null to calculate the values on the calling thread.
+     * @throws IllegalArgumentException if m is not positive.
+     */
+    public void valueOnGrid (double[] out, int m, ForkJoinPool pool)
+    {
+        gridValues(out, new MultiFFT(dimension, m), 0.0, pool);
+    }
+
+    /**
+     * Calculates the values on a grid with each term damped by exp(-decay |k|²). The coefficients are folded into the
+     * transform by k_a modulo m along each axis, and the values are then one inverse transform.
+     */
+    void gridValues (double[] out, MultiFFT fft, double decay, ForkJoinPool pool)
+    {
+        int m = fft.m;
+        int width = 2*n+1;
+        int size = fft.size;
+        double[] damping = new double[width];
+        int[] folded = new int[width];
+        for (int k=-n; k<=n; k++)
+        {
+            damping[k+n] = Math.exp(-decay*k*k);
+            folded[k+n] = ((k % m) + m) % m;
+        }
+
+        java.util.Arrays.fill(out, 0, size, 0.0);
+        double[] outIm = new double[size];
+        int[] digits = new int[dimension];
+        for (int q=0; q<re.length; q++)
+        {
+            // The digits of q in base 2n+1 are k_a+n, most significant first.
+            int p = 0;
+            double w = 1.0;
+            for (int a=0; a<dimension; a++)
+            {
+                p = p*m + folded[digits[a]];
+                w *= damping[digits[a]];
+            }
+            out[p] += w*re[q];
+            outIm[p] += w*im[q];
+
+            for (int a=dimension-1; a>=0 && ++digits[a] == width; a--)
+            {
+                digits[a] = 0;
+            }
+        }
+        fft.inverse(out, outIm, pool);
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Used to transform MultiRealFunction objects in to MultiFourierPolynomial objects, the counterpart of
+ * FourierTransformer for functions of several variables.
+ */
+public class MultiFourierTransformer
+{
+    /**
+     * The number of grid points sampled by each task when sampling in parallel.
+     */
+    private static final int SAMPLE_GRAIN = 256;
+
+    /**
+     * The fewest subintervals along each axis used when none is given.
+     */
+    static final int MIN_SUBINTERVALS = 16;
+
+    /**
+     * Approximates a function on the cube [0,2π]^dimension using the tensor product trapezium rule with the number of
+     * subintervals along each axis chosen by defaultSubintervals.
+     *
+     * With m subintervals the trapezium rule finds each coefficient of degree j plus the true coefficients of degree
+     * m-j, m+j, 2m-j and so on along that axis, which is the aliasing error. The default keeps the nearest of these,
+     * m-n for the highest degree n, above 2n, so the error of every coefficient comes from terms of more than twice
+     * the degree kept, which are small for a smooth g. Functions whose coefficients decay slowly need more
+     * subintervals, given through the options; each doubling costs 2^dimension times as many samples.
+     *
+     * @param g the MultiRealFunction object to be approximated.
+     * @param dimension the number of variables of g.
+     * @param n the degree along each axis of the resulting Fourier polynomial.
+     * @return a MultiFourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if dimension is not positive or n is negative.
+     */
+    public static MultiFourierPolynomial approximate (MultiRealFunction g, int dimension, int n)
+    {
+        if (n < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        return approximate(g, dimension, n, new TransformOptions(defaultSubintervals(n)));
+    }
+
+    /**
+     * Returns the number of subintervals along each axis used when none is given: the smallest power of two of at
+     * least 3n+1, and at least MIN_SUBINTERVALS. The bare minimum for degree n is 2n+1, which would leave the highest
+     * coefficients aliased by the terms just above degree n.
+     */
+    static int defaultSubintervals (int n)
+    {
+        return Math.max(MIN_SUBINTERVALS, FFT.nextPowerOfTwo(3*n + 1));
+    }
+
+    /**
+     * Approximates a function on the cube [0,2π]^dimension using the tensor product trapezium rule with the number of
+     * subintervals along each axis given by the options. As in one dimension, g is sampled at the (subInt+1)^d corners
+     * of the grid cells, and the samples on opposite faces of the cube are averaged into one so that g need not be
+     * periodic. The coefficients are then all found with one multi-dimensional FFT, which like the sampling is split
+     * across the pool of the options if it has one.
+     *
+     * @param g the MultiRealFunction object to be approximated.
+     * @param dimension the number of variables of g.
+     * @param n the degree along each axis of the resulting Fourier polynomial.
+     * @param options the number of subintervals along each axis, the pool, and where the number of evaluations is recorded.
+     * @return a MultiFourierPolynomial object which approximates g.
+     * @throws IllegalArgumentException if dimension is not positive or n is negative.
+     */
+    public static MultiFourierPolynomial approximate (final MultiRealFunction g, final int dimension, int n, TransformOptions options)
+    {
+        if (n < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        final int m = options.getSubintervals();
+        long evaluations = 1;
+        for (int a=0; a<dimension; a++)
+        {
+            evaluations *= m+1;
+        }
+        FourierMetrics metrics = FourierMetrics.begin("MultiFourierTransformer.approximate");
+        try
+        {
+            ForkJoinPool pool = options.getPool();
+            MultiFFT fft = new MultiFFT(dimension, m);
+            int width = 2*n+1;
+            double[] cRe = new double[MultiFFT.gridSize(dimension, width)];
+            double[] cIm = new double[cRe.length];
+
+            final double[] re = new double[fft.size];
+            double[] im = new double[fft.size];
+            Parallel.forRange(pool, 0, fft.size, SAMPLE_GRAIN, new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    double[] x = new double[dimension];
+                    for (int p=from; p<to; p++)
+                    {
+                        re[p] = sample(g, p, m, x);
+                    }
+                }
+            });
+            options.setEvaluationCount(evaluations);
+            options.setErrorEstimate(Double.NaN);
+
+            fft.forward(re, im, pool);
+
+            // c_k is the transform at k_a modulo m along each axis, divided by the number of points.
+            double scale = 1.0/fft.size;
+            int[] digits = new int[dimension];
+            for (int q=0; q<cRe.length; q++)
+            {
+                int p = 0;
+                for (int a=0; a<dimension; a++)
+                {
+                    p = p*m + ((digits[a] - n) % m + m) % m;
+                }
+                cRe[q] = scale*re[p];
+                cIm[q] = scale*im[p];
+
+                for (int a=dimension-1; a>=0 && ++digits[a] == width; a--)
+                {
+                    digits[a] = 0;
+                }
+            }
+            return new MultiFourierPolynomial(dimension, n, cRe, cIm);
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(evaluations);
+            }
+        }
+    }
+
+    /**
+     * Finds the trapezium rule sample at grid point p. Along every axis where the index of p is zero, the sample is
+     * the average of g at 0 and 2π, so a point with z zero indices averages 2^z values of g.
+     *
+     * @param x scratch space of one coordinate for each dimension.
+     */
+    private static double sample (MultiRealFunction g, int p, int m, double[] x)
+    {
+        double h = (2.0*Math.PI)/ (double) m;
+        int zeros = 0;
+        int[] zeroAxes = null;
+        for (int a=x.length-1; a>=0; a--)
+        {
+            int i = p % m;
+            p /= m;
+            x[a] = i*h;
+            if (i == 0)
+            {
+                if (zeroAxes == null)
+                {
+                    zeroAxes = new int[x.length];
+                }
+                zeroAxes[zeros++] = a;
+            }
+        }
+        if (zeros == 0)
+        {
+            return g.valueAt(x);
+        }
+
+        double sum = 0.0;
+        for (int corner=0; corner < 1 << zeros; corner++)
+        {
+            for (int z=0; z<zeros; z++)
+            {
+                x[zeroAxes[z]] = (corner >> z & 1) == 0 ? 0.0 : 2.0*Math.PI;
+            }
+            sum += g.valueAt(x);
+        }
+        return sum/(1 << zeros);
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Used to estimate the solution of the heat equation u_t = α ∇²u on a periodic domain [0,2π]^d of two, three or more
+ * dimensions, at a point, on a grid or as a MultiFourierPolynomial object. It is the counterpart of HeatEquation.
+ *
+ * Each term c_k exp(i k·x) of the initial condition decays independently by exp(-α|k|²t). The decay is the product
+ * of exp(-αk_a²t) over the axes, so it is applied one axis at a time in the same separable sums as the evaluation.
+ */
+public class MultiHeatEquation
+{
+    /**
+     * Diffusivity of the medium.
+     */
+    final double alpha;
+
+    /**
+     * Initial conditions as a MultiRealFunction object, periodic along every axis.
+     */
+    final MultiRealFunction g;
+
+    /**
+     * The number of spatial dimensions.
+     */
+    final int dimension;
+
+    /**
+     * Degree along each axis of the resulting MultiFourierPolynomial.
+     */
+    final int n;
+
+    /**
+     * The pool used for the transforms, or null to use the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The Fourier polynomial approximating g, computed by the first call which needs it.
+     */
+    private volatile MultiFourierPolynomial initial;
+
+    /**
+     * Constructor for the MultiHeatEquation class which calculates on the calling thread.
+     *
+     * @throws IllegalArgumentException if diffusivity is not greater than zero.
+     * @throws IllegalArgumentException if dimension is not positive or degree is negative.
+     */
+    public MultiHeatEquation (double diffusivity, MultiRealFunction initialCondition, int dimension, int degree)
+    {
+        this(diffusivity, initialCondition, dimension, degree, null);
+    }
+
+    /**
+     * Constructor for the MultiHeatEquation class which splits the transforms along each axis across a pool.
+     *
+     * @param pool the pool to use, or null to calculate on the calling thread.
+     * @throws IllegalArgumentException if diffusivity is not greater than zero.
+     * @throws IllegalArgumentException if dimension is not positive or degree is negative.
+     */
+    public MultiHeatEquation (double diffusivity, MultiRealFunction initialCondition, int dimension, int degree, ForkJoinPool pool)
+    {
+        if (diffusivity <= 0)
+        {
+            throw new java.lang.IllegalArgumentException("alpha must be greater than zero");
+        }
+        alpha = diffusivity;
+
+        g = initialCondition;
+
+        if (dimension < 1)
+        {
+            throw new java.lang.IllegalArgumentException("dimension must be positive");
+        }
+        this.dimension = dimension;
+
+        if (degree < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        n = degree;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the Fourier polynomial approximating g, found the first time it is needed and then kept.
+     *
+     * @return the approximation of the initial condition, which must not be modified.
+     */
+    MultiFourierPolynomial initialPolynomial ()
+    {
+        MultiFourierPolynomial f = initial;
+        if (f == null)
+        {
+            synchronized (this)
+            {
+                f = initial;
+                if (f == null)
+                {
+                    TransformOptions options = new TransformOptions(MultiFourierTransformer.defaultSubintervals(n)).setPool(pool);
+                    f = MultiFourierTransformer.approximate(g, dimension, n, options);
+                    initial = f;
+                }
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Gives the value of u at a point x at time t. The approximation of g is reused between calls, and each call
+     * costs O((2n+1)^d) without building the decayed polynomial.
+     *
+     * @param x the point in space, with one coordinate for each dimension.
+     * @param t time passed.
+     * @return the value of u at x at time t.
+     * @throws IllegalArgumentException if t is negative or x does not have one entry for each dimension.
+     */
+    public double evaluateSolution (double[] x, double t)
+    {
+        if (t < 0)
+        {
+            throw new java.lang.IllegalArgumentException("t must be non-negative");
+        }
+        FourierMetrics metrics = FourierMetrics.begin("MultiHeatEquation.evaluateSolution");
+        try
+        {
+            double u = initialPolynomial().value(x, alpha*t);
+            return u;
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+
+    /**
+     * Represents the temperature profile after time t with a MultiFourierPolynomial object.
+     *
+     * @param t time passed.
+     * @return a MultiFourierPolynomial representing the solution at time t.
+     * @throws IllegalArgumentException if t is negative.
+     */
+    public MultiFourierPolynomial getSolution (double t)
+    {
+        if (t < 0)
+        {
+            throw new java.lang.IllegalArgumentException("t must be non-negative");
+        }
+        FourierMetrics metrics = FourierMetrics.begin("MultiHeatEquation.getSolution");
+        try
+        {
+            MultiFourierPolynomial f = initialPolynomial();
+            int width = 2*n+1;
+            double[] factors = TableCache.decay(alpha, n, t);
+            double[] damping = new double[width];
+            damping[n] = 1.0;
+            for (int k=1; k<=n; k++)
+            {
+                damping[n+k] = factors[k-1];
+                damping[n-k] = factors[k-1];
+            }
+
+            double[] re = new double[f.re.length];
+            double[] im = new double[f.im.length];
+            int[] digits = new int[dimension];
+            for (int q=0; q<re.length; q++)
+            {
+                double w = 1.0;
+                for (int a=0; a<dimension; a++)
+                {
+                    w *= damping[digits[a]];
+                }
+                re[q] = w*f.re[q];
+                im[q] = w*f.im[q];
+
+                for (int a=dimension-1; a>=0 && ++digits[a] == width; a--)
+                {
+                    digits[a] = 0;
+                }
+            }
+            return new MultiFourierPolynomial(dimension, n, re, im);
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+
+    /**
+     * Calculates the solution at time t on the grid of m points 2πi/m along each axis with one inverse transform.
+     *
+     * @param m the number of points along each axis.
+     * @param t time passed.
+     * @param out array of at least m^dimension values to store the solution in, in the row-major order used by MultiFFT.
+     * @throws IllegalArgumentException if m is not positive or t is negative.
+     */
+    public void solveOnGrid (int m, double t, double[] out)
+    {
+        if (t < 0)
+        {
+            throw new java.lang.IllegalArgumentException("t must be non-negative");
+        }
+        FourierMetrics metrics = FourierMetrics.begin("MultiHeatEquation.solveOnGrid");
+        try
+        {
+            initialPolynomial().gridValues(out, new MultiFFT(dimension, m), alpha*t, pool);
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+}
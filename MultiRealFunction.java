@@ -0,0 +1,17 @@
+/**
+ * A real-valued function of several variables, such as the initial temperature on a two or three dimensional periodic
+ * domain. It is the counterpart of RealFunction for MultiFourierTransformer and MultiHeatEquation.
+ */
+public class MultiRealFunction
+{
+    /**
+     * Evaluate the function at a specific point.
+     *
+     * @param x the coordinates of the point to evaluate at, one for each dimension.
+     * @return f(x) where f is the function described by this object.
+     */
+    public double valueAt (double[] x)
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,286 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A non-uniform fast Fourier transform using the Gaussian gridding of Greengard and Lee, which moves between a Fourier
+ * polynomial of degree at most n and values at arbitrary scattered points in O(n log n + M) operations for M points,
+ * instead of O(nM) for summing the terms at each point.
+ *
+ * Type 2, evaluate, finds the values of a polynomial at scattered points. Its coefficients are divided by the Fourier
+ * transform of a periodic Gaussian, the result is found on an oversampled grid with one inverse FFT, and each value
+ * is the convolution of the grid values with the Gaussian, summed over the 2w grid points nearest the point.
+ * Type 1, approximate, runs the same steps backwards to find the Fourier coefficients of scattered samples: each
+ * sample is spread onto the grid with the Gaussian, the grid is transformed, and the Gaussian is divided out again.
+ *
+ * The grid is at least twice as fine as the 2n+1 modes need, and the width w and the Gaussian are chosen from the
+ * requested tolerance, which bounds the error relative to the sum of the absolute values of the coefficients, or for
+ * type 1 of the weighted samples. The Gaussian at the 2w grid points around a point is found from three exponentials
+ * and a table rather than 2w exponentials.
+ *
+ * A NUFFT object holds its own grid so it should not be shared between threads, although the interpolation of type 2
+ * can be split across the threads of a pool.
+ */
+public class NUFFT
+{
+    /**
+     * The number of points interpolated by each task when evaluating in parallel.
+     */
+    private static final int GRAIN = 4096;
+
+    /**
+     * The largest degree handled.
+     */
+    final int n;
+
+    /**
+     * The number of points on the oversampled grid.
+     */
+    final int grid;
+
+    /**
+     * The number of grid points used on each side of a point.
+     */
+    final int width;
+
+    /**
+     * The variance parameter of the Gaussian exp(-x²/4τ).
+     */
+    private final double tau;
+
+    /**
+     * The factor sqrt(π/τ) exp(k²τ) undoing the Gaussian for |k| <= n, stored at k+n.
+     */
+    private final double[] deconvolve;
+
+    /**
+     * exp(-(lΔ)²/4τ) for 0 <= l <= width, where Δ is the grid spacing.
+     */
+    private final double[] table;
+
+    private final FFT fft;
+    private final double[] re;
+    private final double[] im;
+
+    /**
+     * Constructor for the NUFFT class.
+     *
+     * @param degree the largest degree of the polynomials handled.
+     * @param tolerance the requested relative accuracy, between 1e-15 and 0.1.
+     * @throws IllegalArgumentException if degree is negative or tolerance is not positive.
+     */
+    public NUFFT (int degree, double tolerance)
+    {
+        if (degree < 0)
+        {
+            throw new java.lang.IllegalArgumentException("n cannot be negative");
+        }
+        if (!(tolerance > 0))
+        {
+            throw new java.lang.IllegalArgumentException("tolerance must be positive");
+        }
+        n = degree;
+        int modes = 2*n+1;
+        // The error of Gaussian gridding with oversampling ratio R is about exp(-π w (R-1)/(R-1/2)), which is
+        // exp(-2πw/3) at R = 2.
+        double digits = -Math.log(Math.min(Math.max(tolerance, 1e-15), 0.1));
+        width = Math.max(2, (int) Math.ceil(digits*3.0/(2.0*Math.PI)));
+        grid = FFT.nextPowerOfTwo(Math.max(2*modes, 4*width));
+        double ratio = grid/(double) modes;
+        tau = Math.PI*width/((double) modes*modes*ratio*(ratio - 0.5));
+
+        deconvolve = new double[modes];
+        for (int k=-n; k<=n; k++)
+        {
+            deconvolve[k+n] = Math.sqrt(Math.PI/tau)*Math.exp((double) k*k*tau);
+        }
+        double spacing = 2.0*Math.PI/grid;
+        table = new double[width+1];
+        for (int l=0; l<=width; l++)
+        {
+            table[l] = Math.exp(-(l*spacing)*(l*spacing)/(4.0*tau));
+        }
+
+        fft = TableCache.fft(grid);
+        re = new double[grid];
+        im = new double[grid];
+    }
+
+    /**
+     * Returns the largest degree handled.
+     *
+     * @return the degree.
+     */
+    public int getDegree ()
+    {
+        return n;
+    }
+
+    /**
+     * Calculates the values of a Fourier polynomial at scattered points (type 2).
+     *
+     * @param f the Fourier polynomial, of degree at most getDegree().
+     * @param xs the points to evaluate at, which need not lie in [0,2π].
+     * @param out array to store f(xs[i]) in out[i].
+     * @throws IllegalArgumentException if the degree of f is too high.
+     */
+    public void evaluate (FourierPolynomial f, double[] xs, double[] out)
+    {
+        evaluate(f, xs, out, null);
+    }
+
+    /**
+     * Calculates the values of a Fourier polynomial at scattered points (type 2), splitting the interpolation across
+     * the threads of a pool.
+     *
+     * @param f the Fourier polynomial, of degree at most getDegree().
+     * @param xs the points to evaluate at, which need not lie in [0,2π].
+     * @param out array to store f(xs[i]) in out[i].
+     * @param pool the pool to use, or null to calculate on the calling thread.
+     * @throws IllegalArgumentException if the degree of f is too high.
+     */
+    public void evaluate (FourierPolynomial f, final double[] xs, final double[] out, ForkJoinPool pool)
+    {
+        int degree = f.aj.length;
+        if (degree > n)
+        {
+            throw new java.lang.IllegalArgumentException("the degree of f is more than " + n);
+        }
+        FourierMetrics metrics = FourierMetrics.begin("NUFFT.evaluate");
+        try
+        {
+            // c_0 = a0/2 and c_±k = (a_k ∓ i b_k)/2, each divided by the transform of the Gaussian.
+            java.util.Arrays.fill(re, 0.0);
+            java.util.Arrays.fill(im, 0.0);
+            re[0] = f.a0/2.0*deconvolve[n];
+            for (int k=1; k<=degree; k++)
+            {
+                double r = f.aj[k-1]/2.0;
+                double s = f.bj[k-1]/2.0;
+                re[k] = r*deconvolve[n+k];
+                im[k] = -s*deconvolve[n+k];
+                re[grid-k] = r*deconvolve[n-k];
+                im[grid-k] = s*deconvolve[n-k];
+            }
+            fft.inverse(re, im);
+
+            Parallel.forRange(pool, 0, xs.length, GRAIN, new Parallel.Range()
+            {
+                public void run (int from, int to)
+                {
+                    for (int i=from; i<to; i++)
+                    {
+                        out[i] = interpolate(xs[i]);
+                    }
+                }
+            });
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+
+    /**
+     * Finds the value at a point from the grid values in re, as the trapezium rule for the convolution with the Gaussian.
+     */
+    private double interpolate (double x)
+    {
+        double spacing = 2.0*Math.PI/grid;
+        double cell = Math.floor(x/spacing);
+        double xi = x - cell*spacing;
+        int m = (int) (cell % grid);
+        if (m < 0)
+        {
+            m += grid;
+        }
+
+        // exp(-(ξ-lΔ)²/4τ) = exp(-ξ²/4τ) exp(ξΔ/2τ)^l exp(-(lΔ)²/4τ)
+        double e1 = Math.exp(-xi*xi/(4.0*tau));
+        double e2 = Math.exp(xi*spacing/(2.0*tau));
+        double sum = e1*re[m];
+        double up = e1;
+        double down = e1;
+        for (int l=1; l<=width; l++)
+        {
+            up *= e2;
+            down /= e2;
+            sum += up*table[l]*re[(m+l) & (grid-1)];
+            sum += down*table[l]*re[(m-l) & (grid-1)];
+        }
+        return sum/grid;
+    }
+
+    /**
+     * Finds the Fourier polynomial of degree getDegree() whose coefficients are the weighted sums
+     * a_k = (1/π) Σ w_j y_j cos(k x_j) and b_k = (1/π) Σ w_j y_j sin(k x_j) over scattered samples (type 1).
+     * These are the quadrature approximations of the Fourier coefficients of a function sampled at the points when the
+     * weights are quadrature weights for [0,2π].
+     *
+     * @param xs the points sampled, which need not lie in [0,2π].
+     * @param values the sample y_j at each point.
+     * @param weights the quadrature weight w_j of each sample, or null to weight every sample 2π/M for M samples.
+     * @return the Fourier polynomial.
+     * @throws IllegalArgumentException if the arrays have different lengths.
+     */
+    public FourierPolynomial approximate (double[] xs, double[] values, double[] weights)
+    {
+        if (values.length != xs.length || (weights != null && weights.length != xs.length))
+        {
+            throw new java.lang.IllegalArgumentException("there must be one value and weight for each point");
+        }
+        FourierMetrics metrics = FourierMetrics.begin("NUFFT.approximate");
+        try
+        {
+            double spacing = 2.0*Math.PI/grid;
+            double uniform = 2.0*Math.PI/Math.max(xs.length, 1);
+
+            java.util.Arrays.fill(re, 0.0);
+            java.util.Arrays.fill(im, 0.0);
+            for (int j=0; j<xs.length; j++)
+            {
+                double v = values[j]*(weights == null ? uniform : weights[j]);
+                double cell = Math.floor(xs[j]/spacing);
+                double xi = xs[j] - cell*spacing;
+                int m = (int) (cell % grid);
+                if (m < 0)
+                {
+                    m += grid;
+                }
+                double e1 = v*Math.exp(-xi*xi/(4.0*tau));
+                double e2 = Math.exp(xi*spacing/(2.0*tau));
+                re[m] += e1;
+                double up = e1;
+                double down = e1;
+                for (int l=1; l<=width; l++)
+                {
+                    up *= e2;
+                    down /= e2;
+                    re[(m+l) & (grid-1)] += up*table[l];
+                    re[(m-l) & (grid-1)] += down*table[l];
+                }
+            }
+            fft.forward(re, im);
+
+            // F_k = Σ v_j exp(-ik x_j) is the transform divided by the grid size and the transform of the Gaussian.
+            double[] aj = new double[n];
+            double[] bj = new double[n];
+            double scale = 1.0/(grid*Math.PI);
+            double a0 = re[0]*deconvolve[n]*scale;
+            for (int k=1; k<=n; k++)
+            {
+                aj[k-1] = re[k]*deconvolve[n+k]*scale;
+                bj[k-1] = -im[k]*deconvolve[n+k]*scale;
+            }
+            return new FourierPolynomial(a0, aj, bj);
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * The statistics recorded by a MetricsCollector for one operation at the time a snapshot was taken.
+ * 
+ * @see MetricsCollector
+ */
+public class OperationStatistics
+{
+    /**
+     * The number of times the operation ran.
+     */
+    private final long calls;
+    
+    /**
+     * The total number of evaluations of user supplied functions.
+     */
+    private final long evaluations;
+    
+    /**
+     * The total time taken in nanoseconds.
+     */
+    private final long nanos;
+    
+    /**
+     * The total number of bytes allocated, counting only calls where allocation was measured.
+     */
+    private final long bytes;
+    
+    /**
+     * The number of calls whose time in nanoseconds t satisfied 2^(i-1) <= t < 2^i, at index i.
+     */
+    private final long[] histogram;
+    
+    /**
+     * Constructor for the OperationStatistics class.
+     */
+    OperationStatistics (long calls, long evaluations, long nanos, long bytes, long[] histogram)
+    {
+        this.calls = calls;
+        this.evaluations = evaluations;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.histogram = histogram;
+    }
+    
+    /**
+     * Returns the number of times the operation ran.
+     * 
+     * @return the number of calls.
+     */
+    public long getCallCount ()
+    {
+        return calls;
+    }
+    
+    /**
+     * Returns the total number of evaluations of user supplied RealFunction objects made by the operation.
+     * 
+     * @return the number of function evaluations.
+     */
+    public long getEvaluationCount ()
+    {
+        return evaluations;
+    }
+    
+    /**
+     * Returns the total time taken by the operation.
+     * 
+     * @return the total time in nanoseconds.
+     */
+    public long getTotalNanos ()
+    {
+        return nanos;
+    }
+    
+    /**
+     * Returns the mean time taken by the operation.
+     * 
+     * @return the mean time in nanoseconds, or zero if it has not run.
+     */
+    public double getMeanNanos ()
+    {
+        return calls == 0 ? 0.0 : nanos/(double) calls;
+    }
+    
+    /**
+     * Returns the total number of bytes allocated by the operation.
+     * 
+     * @return the number of bytes allocated.
+     */
+    public long getBytesAllocated ()
+    {
+        return bytes;
+    }
+    
+    /**
+     * Returns the latency histogram, in which index i counts the calls taking at least 2^(i-1) and less than 2^i 
+     * nanoseconds, and index 0 counts calls measured as taking no time.
+     * 
+     * @return a copy of the 64 histogram counts.
+     */
+    public long[] getLatencyHistogram ()
+    {
+        return histogram.clone();
+    }
+    
+    /**
+     * Estimates a percentile of the time taken from the histogram, as the upper bound of the bucket containing it.
+     * 
+     * @param p the percentile, between 0 and 100.
+     * @return the estimated time in nanoseconds, or zero if the operation has not run.
+     * @throws IllegalArgumentException if p is not between 0 and 100.
+     */
+    public long getPercentileNanos (double p)
+    {
+        if (p < 0 || p > 100)
+        {
+            throw new java.lang.IllegalArgumentException("p must be between 0 and 100");
+        }
+        long total = 0;
+        for (int i=0; i<histogram.length; i++)
+        {
+            total += histogram[i];
+        }
+        long rank = (long) Math.ceil(p/100.0*total);
+        long seen = 0;
+        for (int i=0; i<histogram.length; i++)
+        {
+            seen += histogram[i];
+            if (seen >= rank && seen > 0)
+            {
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return 0;
+    }
+}
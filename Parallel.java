@@ -0,0 +1,84 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the body of a loop over a range of indices on a ForkJoinPool.
+ * 
+ * The range is always split at the same points, which depend only on the range and the grain size and not on the 
+ * number of threads, so work which writes each index separately gives the same result however it is scheduled.
+ */
+public class Parallel
+{
+    /**
+     * The body of a loop over a range of indices.
+     */
+    public interface Range
+    {
+        /**
+         * Runs the loop body for every index i with from <= i < to.
+         * 
+         * @param from the first index.
+         * @param to one more than the last index.
+         */
+        void run (int from, int to);
+    }
+    
+    /**
+     * Runs a loop body over the indices from <= i < to, split into pieces of at most grain indices.
+     * If the pool is null, or the range is no longer than grain, the body is run on the calling thread.
+     * 
+     * @param pool the pool to run the pieces on, or null to run them on the calling thread.
+     * @param from the first index.
+     * @param to one more than the last index.
+     * @param grain the largest number of indices given to a single piece.
+     * @param body the loop body.
+     */
+    static void forRange (ForkJoinPool pool, int from, int to, int grain, Range body)
+    {
+        if (pool == null || to - from <= grain)
+        {
+            if (to > from)
+            {
+                body.run(from, to);
+            }
+        }
+        else
+        {
+            pool.invoke(new RangeTask(from, to, Math.max(grain, 1), body));
+        }
+    }
+    
+    /**
+     * Splits a range in half until the pieces are no longer than the grain size. ForkJoinTask is Serializable, but 
+     * these tasks are never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static class RangeTask extends RecursiveAction
+    {
+        final int from;
+        final int to;
+        final int grain;
+        final Range body;
+        
+        RangeTask (int from, int to, int grain, Range body)
+        {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+        
+        protected void compute ()
+        {
+            if (to - from <= grain)
+            {
+                body.run(from, to);
+            }
+            else
+            {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(from, middle, grain, body), new RangeTask(middle, to, grain, body));
+            }
+        }
+    }
+}
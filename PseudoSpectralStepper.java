@@ -0,0 +1,541 @@
+/**
+ * Advances the solution of a nonlinear periodic equation
+ * <pre>
+ *   u_t = ν u_xx + γ u + N(u),    where N(u) = f(u) or N(u) = -(f(u))_x,
+ * </pre>
+ * on [0,2π] in time with a pseudo-spectral method. The solution is held as the complex Fourier coefficients c_k of
+ * u = Σ c_k exp(ikx) for |k| < n/2, where n is the number of grid points. The linear part is diagonal in these
+ * coefficients, with L_k = γ - νk², while f is applied point by point in physical space between an inverse and a
+ * forward FFT. For example viscous Burgers' equation u_t = ν u_xx - u u_x is f(u) = u²/2 in conservative form, and the
+ * Allen-Cahn equation u_t = ε² u_xx + u - u³ is γ = 1 and f(u) = -u³.
+ *
+ * Products are formed on a padded grid of at least 3n/2 points and truncated back, the 3/2 rule, so that the aliases
+ * of quadratic terms fall outside the modes kept. The padded length is rounded up to a power of two so that its FFT
+ * is radix-2; for n a power of two that is 2n points, which also removes the aliases of cubic terms.
+ *
+ * Two schemes are available. ETDRK4, the fourth order exponential time differencing Runge-Kutta scheme of Cox and
+ * Matthews, treats the linear part exactly, and its coefficients are found by the contour integrals of Kassam and
+ * Trefethen to avoid cancellation. IMEX is second order Crank-Nicolson for the linear part with Adams-Bashforth for the
+ * nonlinear part, which needs one evaluation of N per step instead of four.
+ *
+ * All the work space is allocated by the constructor, so taking steps allocates nothing. A stepper is not thread-safe.
+ */
+public class PseudoSpectralStepper
+{
+    /**
+     * The nonlinear function applied in physical space.
+     */
+    public interface Nonlinearity
+    {
+        /**
+         * Calculates f(u) at each grid point.
+         *
+         * @param u the values of u, which must not be modified.
+         * @param out array to store f(u[i]) in out[i].
+         * @param length the number of grid points.
+         */
+        void apply (double[] u, double[] out, int length);
+    }
+
+    /**
+     * The time stepping schemes available.
+     */
+    public enum Scheme
+    {
+        /**
+         * Fourth order exponential time differencing Runge-Kutta.
+         */
+        ETDRK4,
+
+        /**
+         * Second order Crank-Nicolson for the linear part with Adams-Bashforth for the nonlinear part.
+         */
+        IMEX
+    }
+
+    /**
+     * The number of points on the contour used to find the ETDRK4 coefficients.
+     */
+    private static final int CONTOUR_POINTS = 32;
+
+    /**
+     * The number of grid points, and the padded number used for products.
+     */
+    final int n;
+    final int padded;
+
+    /**
+     * The time step.
+     */
+    final double dt;
+
+    private final Scheme scheme;
+    private final Nonlinearity f;
+    private final boolean conservative;
+
+    private final FFT fft;
+    private final FFT paddedFFT;
+
+    /**
+     * The coefficients c_k in FFT order, with c_-k at n-k. The Nyquist coefficient is always zero.
+     */
+    private final double[] re;
+    private final double[] im;
+
+    /**
+     * The per-mode factors: exp(Lh), which advances the linear part exactly, exp(Lh/2) with the ETDRK4 weights q, f1, 
+     * f2 and f3, or the Crank-Nicolson factor cn = (1+Lh/2)/(1-Lh/2) with q = h/(1-Lh/2) for IMEX.
+     */
+    private final double[] e;
+    private final double[] cn;
+    private final double[] e2;
+    private final double[] q;
+    private final double[] f1;
+    private final double[] f2;
+    private final double[] f3;
+
+    /**
+     * Work space for the stages and their nonlinear terms, each n long.
+     */
+    private final double[] nvRe, nvIm, aRe, aIm, naRe, naIm, bRe, bIm, nbRe, nbIm, cRe, cIm, ncRe, ncIm;
+
+    /**
+     * Work space of the padded length.
+     */
+    private final double[] padRe;
+    private final double[] padIm;
+    private final double[] values;
+
+    /**
+     * Whether nvRe and nvIm hold the nonlinear term of the previous step, used by the IMEX scheme.
+     */
+    private boolean havePrevious;
+
+    /**
+     * The time reached.
+     */
+    private double t;
+
+    /**
+     * Constructor for the PseudoSpectralStepper class. The initial state is zero.
+     *
+     * @param points the number of grid points n, an even number, preferably a power of two.
+     * @param diffusivity the coefficient ν of u_xx.
+     * @param growth the coefficient γ of u.
+     * @param nonlinearity the function f, or null for a linear equation.
+     * @param conservative true if N(u) = -(f(u))_x, false if N(u) = f(u).
+     * @param scheme the time stepping scheme.
+     * @param step the time step.
+     * @throws IllegalArgumentException if points is not an even number of at least 2, or step is not positive.
+     */
+    public PseudoSpectralStepper (int points, double diffusivity, double growth, Nonlinearity nonlinearity,
+                                  boolean conservative, Scheme scheme, double step)
+    {
+        if (points < 2 || points % 2 != 0)
+        {
+            throw new java.lang.IllegalArgumentException("the number of points must be even");
+        }
+        if (!(step > 0))
+        {
+            throw new java.lang.IllegalArgumentException("the time step must be positive");
+        }
+        n = points;
+        padded = FFT.nextPowerOfTwo(3*n/2);
+        dt = step;
+        this.scheme = scheme;
+        f = nonlinearity;
+        this.conservative = conservative;
+        fft = TableCache.fft(n);
+        paddedFFT = TableCache.fft(padded);
+
+        re = new double[n];
+        im = new double[n];
+        nvRe = new double[n]; nvIm = new double[n];
+        aRe = new double[n]; aIm = new double[n];
+        naRe = new double[n]; naIm = new double[n];
+        bRe = new double[n]; bIm = new double[n];
+        nbRe = new double[n]; nbIm = new double[n];
+        cRe = new double[n]; cIm = new double[n];
+        ncRe = new double[n]; ncIm = new double[n];
+        padRe = new double[padded];
+        padIm = new double[padded];
+        values = new double[padded];
+
+        e = new double[n];
+        cn = new double[n];
+        e2 = new double[n];
+        q = new double[n];
+        f1 = new double[n];
+        f2 = new double[n];
+        f3 = new double[n];
+        for (int i=0; i<n; i++)
+        {
+            int k = i <= n/2 ? i : i-n;
+            double lh = (growth - diffusivity*k*k)*dt;
+            if (scheme == Scheme.ETDRK4)
+            {
+                etdrk4Coefficients(lh, i);
+            }
+            else
+            {
+                e[i] = Math.exp(lh);
+                cn[i] = (1.0 + lh/2.0)/(1.0 - lh/2.0);
+                q[i] = dt/(1.0 - lh/2.0);
+            }
+        }
+    }
+
+    /**
+     * Returns a stepper for viscous Burgers' equation u_t = ν u_xx - u u_x.
+     *
+     * @param points the number of grid points, an even number.
+     * @param viscosity the viscosity ν.
+     * @param step the time step.
+     * @return a stepper using ETDRK4.
+     */
+    public static PseudoSpectralStepper burgers (int points, double viscosity, double step)
+    {
+        return new PseudoSpectralStepper(points, viscosity, 0.0, new Nonlinearity()
+        {
+            public void apply (double[] u, double[] out, int length)
+            {
+                for (int i=0; i<length; i++)
+                {
+                    out[i] = 0.5*u[i]*u[i];
+                }
+            }
+        }, true, Scheme.ETDRK4, step);
+    }
+
+    /**
+     * Returns a stepper for the Allen-Cahn equation u_t = ε² u_xx + u - u³.
+     *
+     * @param points the number of grid points, an even number.
+     * @param epsilon the width ε of the interfaces.
+     * @param step the time step.
+     * @return a stepper using ETDRK4.
+     */
+    public static PseudoSpectralStepper allenCahn (int points, double epsilon, double step)
+    {
+        return new PseudoSpectralStepper(points, epsilon*epsilon, 1.0, new Nonlinearity()
+        {
+            public void apply (double[] u, double[] out, int length)
+            {
+                for (int i=0; i<length; i++)
+                {
+                    out[i] = -u[i]*u[i]*u[i];
+                }
+            }
+        }, false, Scheme.ETDRK4, step);
+    }
+
+    /**
+     * Finds the ETDRK4 coefficients of one mode by averaging the φ functions over a circle of radius one around Lh,
+     * which avoids the cancellation of the closed forms when Lh is small.
+     */
+    private void etdrk4Coefficients (double lh, int i)
+    {
+        e[i] = Math.exp(lh);
+        e2[i] = Math.exp(lh/2.0);
+        double sq = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        for (int j=1; j<=CONTOUR_POINTS; j++)
+        {
+            double angle = Math.PI*(j - 0.5)/CONTOUR_POINTS;
+            // z = lh + exp(i angle); only the upper half circle is needed since the results are real.
+            double zr = lh + Math.cos(angle);
+            double zi = Math.sin(angle);
+            double ez = Math.exp(zr);
+            double er = ez*Math.cos(zi);
+            double ei = ez*Math.sin(zi);
+            double eh = Math.exp(zr/2.0);
+            double ehr = eh*Math.cos(zi/2.0);
+            double ehi = eh*Math.sin(zi/2.0);
+
+            double z2r = zr*zr - zi*zi, z2i = 2.0*zr*zi;
+            double z3r = z2r*zr - z2i*zi, z3i = z2r*zi + z2i*zr;
+
+            // (exp(z/2) - 1)/z
+            sq += realQuotient(ehr - 1.0, ehi, zr, zi);
+            // (-4 - z + exp(z)(4 - 3z + z²))/z³
+            double pr = 4.0 - 3.0*zr + z2r, pi = -3.0*zi + z2i;
+            s1 += realQuotient(-4.0 - zr + er*pr - ei*pi, -zi + er*pi + ei*pr, z3r, z3i);
+            // (2 + z + exp(z)(-2 + z))/z³
+            pr = -2.0 + zr; pi = zi;
+            s2 += realQuotient(2.0 + zr + er*pr - ei*pi, zi + er*pi + ei*pr, z3r, z3i);
+            // (-4 - 3z - z² + exp(z)(4 - z))/z³
+            pr = 4.0 - zr; pi = -zi;
+            s3 += realQuotient(-4.0 - 3.0*zr - z2r + er*pr - ei*pi, -3.0*zi - z2i + er*pi + ei*pr, z3r, z3i);
+        }
+        q[i] = dt*sq/CONTOUR_POINTS;
+        f1[i] = dt*s1/CONTOUR_POINTS;
+        f2[i] = dt*s2/CONTOUR_POINTS;
+        f3[i] = dt*s3/CONTOUR_POINTS;
+    }
+
+    /**
+     * Returns the real part of (ar + i ai)/(br + i bi).
+     */
+    private static double realQuotient (double ar, double ai, double br, double bi)
+    {
+        return (ar*br + ai*bi)/(br*br + bi*bi);
+    }
+
+    /**
+     * Sets the state to the values of a function at the grid points 2πj/n, and the time to zero.
+     *
+     * @param g the initial condition, assumed to be 2π-periodic.
+     */
+    public void setState (RealFunction g)
+    {
+        for (int j=0; j<n; j++)
+        {
+            re[j] = g.valueAt(2.0*Math.PI*j/n);
+            im[j] = 0.0;
+        }
+        loadValues();
+    }
+
+    /**
+     * Sets the state to values at the grid points 2πj/n, and the time to zero.
+     *
+     * @param u the values at the n grid points.
+     * @throws IllegalArgumentException if u does not have n values.
+     */
+    public void setState (double[] u)
+    {
+        if (u.length != n)
+        {
+            throw new java.lang.IllegalArgumentException("there must be a value for each grid point");
+        }
+        System.arraycopy(u, 0, re, 0, n);
+        java.util.Arrays.fill(im, 0.0);
+        loadValues();
+    }
+
+    /**
+     * Transforms grid values held in re into coefficients.
+     */
+    private void loadValues ()
+    {
+        fft.forward(re, im);
+        for (int i=0; i<n; i++)
+        {
+            re[i] /= n;
+            im[i] /= n;
+        }
+        re[n/2] = 0.0;
+        im[n/2] = 0.0;
+        t = 0.0;
+        havePrevious = false;
+    }
+
+    /**
+     * Returns the time reached.
+     *
+     * @return the time.
+     */
+    public double getTime ()
+    {
+        return t;
+    }
+
+    /**
+     * Returns the number of grid points.
+     *
+     * @return n.
+     */
+    public int getPoints ()
+    {
+        return n;
+    }
+
+    /**
+     * Calculates the current solution at the grid points 2πj/n.
+     *
+     * @param out array of at least n values to store the solution in.
+     */
+    public void getState (double[] out)
+    {
+        System.arraycopy(re, 0, out, 0, n);
+        System.arraycopy(im, 0, aIm, 0, n);
+        fft.inverse(out, aIm);
+    }
+
+    /**
+     * Returns the current solution as a Fourier polynomial of degree n/2-1.
+     *
+     * @return the solution, with a_k = 2 Re c_k and b_k = -2 Im c_k.
+     */
+    public FourierPolynomial getPolynomial ()
+    {
+        int degree = n/2 - 1;
+        double[] aj = new double[degree];
+        double[] bj = new double[degree];
+        for (int k=1; k<=degree; k++)
+        {
+            aj[k-1] = 2.0*re[k];
+            bj[k-1] = -2.0*im[k];
+        }
+        return new FourierPolynomial(2.0*re[0], aj, bj);
+    }
+
+    /**
+     * Advances the solution by a number of time steps.
+     *
+     * @param steps the number of steps to take.
+     */
+    public void advance (int steps)
+    {
+        FourierMetrics metrics = FourierMetrics.begin("PseudoSpectralStepper.advance");
+        try
+        {
+            for (int s=0; s<steps; s++)
+            {
+                step();
+            }
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.end(0);
+            }
+        }
+    }
+
+    /**
+     * Advances the solution by one time step.
+     */
+    public void step ()
+    {
+        if (f == null)
+        {
+            // A linear equation is solved exactly.
+            for (int i=0; i<n; i++)
+            {
+                re[i] *= e[i];
+                im[i] *= e[i];
+            }
+        }
+        else if (scheme == Scheme.ETDRK4)
+        {
+            etdrk4Step();
+        }
+        else
+        {
+            imexStep();
+        }
+        t += dt;
+    }
+
+    /**
+     * One step of ETDRK4.
+     */
+    private void etdrk4Step ()
+    {
+        nonlinear(re, im, nvRe, nvIm);
+        for (int i=0; i<n; i++)
+        {
+            aRe[i] = e2[i]*re[i] + q[i]*nvRe[i];
+            aIm[i] = e2[i]*im[i] + q[i]*nvIm[i];
+        }
+        nonlinear(aRe, aIm, naRe, naIm);
+        for (int i=0; i<n; i++)
+        {
+            bRe[i] = e2[i]*re[i] + q[i]*naRe[i];
+            bIm[i] = e2[i]*im[i] + q[i]*naIm[i];
+        }
+        nonlinear(bRe, bIm, nbRe, nbIm);
+        for (int i=0; i<n; i++)
+        {
+            cRe[i] = e2[i]*aRe[i] + q[i]*(2.0*nbRe[i] - nvRe[i]);
+            cIm[i] = e2[i]*aIm[i] + q[i]*(2.0*nbIm[i] - nvIm[i]);
+        }
+        nonlinear(cRe, cIm, ncRe, ncIm);
+        for (int i=0; i<n; i++)
+        {
+            re[i] = e[i]*re[i] + f1[i]*nvRe[i] + 2.0*f2[i]*(naRe[i] + nbRe[i]) + f3[i]*ncRe[i];
+            im[i] = e[i]*im[i] + f1[i]*nvIm[i] + 2.0*f2[i]*(naIm[i] + nbIm[i]) + f3[i]*ncIm[i];
+        }
+    }
+
+    /**
+     * One step of Crank-Nicolson with second order Adams-Bashforth. The first step after the state is set uses the
+     * current nonlinear term in place of the previous one.
+     */
+    private void imexStep ()
+    {
+        nonlinear(re, im, naRe, naIm);
+        if (!havePrevious)
+        {
+            System.arraycopy(naRe, 0, nvRe, 0, n);
+            System.arraycopy(naIm, 0, nvIm, 0, n);
+            havePrevious = true;
+        }
+        for (int i=0; i<n; i++)
+        {
+            re[i] = cn[i]*re[i] + q[i]*(1.5*naRe[i] - 0.5*nvRe[i]);
+            im[i] = cn[i]*im[i] + q[i]*(1.5*naIm[i] - 0.5*nvIm[i]);
+        }
+        System.arraycopy(naRe, 0, nvRe, 0, n);
+        System.arraycopy(naIm, 0, nvIm, 0, n);
+    }
+
+    /**
+     * Calculates the coefficients of N(u) from those of u. The coefficients are zero padded to the padded grid, u is
+     * found there with an inverse transform, f is applied, and the result is transformed back and truncated to the
+     * modes |k| < n/2.
+     */
+    private void nonlinear (double[] uRe, double[] uIm, double[] outRe, double[] outIm)
+    {
+        int half = n/2;
+        java.util.Arrays.fill(padRe, 0.0);
+        java.util.Arrays.fill(padIm, 0.0);
+        for (int k=0; k<half; k++)
+        {
+            padRe[k] = uRe[k];
+            padIm[k] = uIm[k];
+        }
+        for (int k=1; k<half; k++)
+        {
+            padRe[padded-k] = uRe[n-k];
+            padIm[padded-k] = uIm[n-k];
+        }
+        paddedFFT.inverse(padRe, padIm);
+
+        f.apply(padRe, values, padded);
+        System.arraycopy(values, 0, padRe, 0, padded);
+        java.util.Arrays.fill(padIm, 0.0);
+        paddedFFT.forward(padRe, padIm);
+
+        double scale = 1.0/padded;
+        for (int k=0; k<half; k++)
+        {
+            store(outRe, outIm, k, k, padRe[k]*scale, padIm[k]*scale);
+        }
+        for (int k=1; k<half; k++)
+        {
+            store(outRe, outIm, n-k, -k, padRe[padded-k]*scale, padIm[padded-k]*scale);
+        }
+        outRe[half] = 0.0;
+        outIm[half] = 0.0;
+    }
+
+    /**
+     * Stores the coefficient of f(u) for wavenumber k at index i, multiplied by -ik in conservative form.
+     */
+    private void store (double[] outRe, double[] outIm, int i, int k, double r, double s)
+    {
+        if (conservative)
+        {
+            // -ik (r + is) = ks - ikr
+            outRe[i] = k*s;
+            outIm[i] = -k*r;
+        }
+        else
+        {
+            outRe[i] = r;
+            outIm[i] = s;
+        }
+    }
+}
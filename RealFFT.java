@@ -0,0 +1,171 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A fast Fourier transform of real sequences. Sequences of even length are packed into a complex sequence of
+ * half the length, transformed with a FFT object and then separated, which halves the work of a complex transform.
+ *
+ * A RealFFT object holds its own scratch space so a single object should not be shared between threads.
+ */
+public class RealFFT
+{
+    /**
+     * The length of the sequences transformed.
+     */
+    final int n;
+
+    /**
+     * The complex transform of length n/2 for even n, or of length n for odd n.
+     */
+    private final FFT fft;
+
+    /**
+     * The twiddle factors exp(-2πik/n) for 0 <= k <= n/2 used to separate the packed transform.
+     */
+    private final double[] twiddleRe;
+    private final double[] twiddleIm;
+
+    /**
+     * Scratch space for the complex transform.
+     */
+    private final double[] workRe;
+    private final double[] workIm;
+
+    /**
+     * Constructor for the RealFFT class.
+     *
+     * @param length the length of the sequences to be transformed.
+     * @throws IllegalArgumentException if length is not positive.
+     */
+    public RealFFT (int length)
+    {
+        if (length < 1)
+        {
+            throw new java.lang.IllegalArgumentException("length must be positive");
+        }
+        n = length;
+
+        if (n % 2 == 0)
+        {
+            fft = new FFT(n/2);
+            twiddleRe = new double[n/2+1];
+            twiddleIm = new double[n/2+1];
+            for (int k=0; k<=n/2; k++)
+            {
+                twiddleRe[k] = Math.cos(2.0*Math.PI*k/n);
+                twiddleIm[k] = -Math.sin(2.0*Math.PI*k/n);
+            }
+        }
+        else
+        {
+            fft = new FFT(n);
+            twiddleRe = null;
+            twiddleIm = null;
+        }
+        workRe = new double[fft.n];
+        workIm = new double[fft.n];
+    }
+
+    /**
+     * Constructor for a RealFFT which shares the tables of another but has its own scratch space.
+     */
+    private RealFFT (RealFFT shared)
+    {
+        n = shared.n;
+        fft = shared.fft.copy();
+        twiddleRe = shared.twiddleRe;
+        twiddleIm = shared.twiddleIm;
+        workRe = new double[fft.n];
+        workIm = new double[fft.n];
+    }
+
+    /**
+     * Returns a transform of the same length which can be used on another thread at the same time as this one.
+     *
+     * @return a transform sharing the tables of this one.
+     */
+    RealFFT copy ()
+    {
+        return new RealFFT(this);
+    }
+
+    /**
+     * Returns the approximate number of bytes held by the tables and scratch space of this transform.
+     */
+    long tableBytes ()
+    {
+        return 16L*(workRe.length + (twiddleRe == null ? 0 : twiddleRe.length)) + fft.tableBytes();
+    }
+
+    /**
+     * Returns the length of the sequences transformed.
+     *
+     * @return the length of the transform.
+     */
+    public int length ()
+    {
+        return n;
+    }
+
+    /**
+     * Calculates the first n/2+1 values X_k = Σ x_j exp(-2πijk/n) of the transform of a real sequence.
+     * The remaining values follow from X_(n-k) being the complex conjugate of X_k.
+     *
+     * @param x the real sequence, at least n long. It is not modified.
+     * @param re array of at least n/2+1 values to store the real parts of the transform in.
+     * @param im array of at least n/2+1 values to store the imaginary parts of the transform in.
+     */
+    public void forward (double[] x, double[] re, double[] im)
+    {
+        forward(x, re, im, null);
+    }
+
+    /**
+     * Calculates the first n/2+1 values of the transform of a real sequence, splitting the complex transform across
+     * the threads of a pool. The result is identical to that of forward(x, re, im).
+     *
+     * @param x the real sequence, at least n long. It is not modified.
+     * @param re array of at least n/2+1 values to store the real parts of the transform in.
+     * @param im array of at least n/2+1 values to store the imaginary parts of the transform in.
+     * @param pool the pool to use, or null to calculate the transform on the calling thread.
+     */
+    public void forward (double[] x, double[] re, double[] im, ForkJoinPool pool)
+    {
+        if (twiddleRe == null)
+        {
+            for (int j=0; j<n; j++)
+            {
+                workRe[j] = x[j];
+                workIm[j] = 0.0;
+            }
+            fft.forward(workRe, workIm, pool);
+            for (int k=0; k<=n/2; k++)
+            {
+                re[k] = workRe[k];
+                im[k] = workIm[k];
+            }
+            return;
+        }
+
+        int half = n/2;
+        // Even samples become the real parts and odd samples the imaginary parts.
+        for (int j=0; j<half; j++)
+        {
+            workRe[j] = x[2*j];
+            workIm[j] = x[2*j+1];
+        }
+        fft.forward(workRe, workIm, pool);
+
+        for (int k=0; k<=half; k++)
+        {
+            int a = k % half;
+            int b = (half-k) % half;
+            // E_k = (Z_k + conj(Z_(half-k)))/2 and O_k = (Z_k - conj(Z_(half-k)))/(2i).
+            double er = (workRe[a] + workRe[b])/2.0;
+            double ei = (workIm[a] - workIm[b])/2.0;
+            double or = (workIm[a] + workIm[b])/2.0;
+            double oi = -(workRe[a] - workRe[b])/2.0;
+            re[k] = er + or*twiddleRe[k] - oi*twiddleIm[k];
+            im[k] = ei + or*twiddleIm[k] + oi*twiddleRe[k];
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Receives the time slices of a solution computed on a space-time grid, one slice at a time.
+ */
+public interface SliceConsumer
+{
+    /**
+     * Accepts the values of a solution at one time.
+     * The array is reused for the next slice, so it must be copied if the values are needed after this call returns.
+     * 
+     * @param step the index of the time in the array of times.
+     * @param t the time of the slice.
+     * @param values the values of the solution at the points x_k = 2πk/m for 0 <= k < m.
+     */
+    void accept (int step, double t, double[] values);
+}
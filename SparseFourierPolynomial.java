@@ -0,0 +1,461 @@
+/**
+ * A Fourier polynomial which stores only its non-zero terms, for polynomials of high degree with few terms.
+ * The degrees of the terms are held in increasing order in one array, with their cosine and sine coefficients
+ * at the same index of two others, so memory and the cost of evaluation depend on the number of terms and not
+ * on the degree.
+ *
+ * Sums and products are taken through the TrigonometricPolynomial interface, so either operand may be dense, and
+ * the result is converted to whichever representation its fill ratio suits: a sum or product which fills more than
+ * a quarter of its degrees comes back as a FourierPolynomial.
+ */
+public class SparseFourierPolynomial extends RealFunction implements TrigonometricPolynomial
+{
+    /**
+     * The fraction of degrees with a non-zero term above which the dense FourierPolynomial is the better representation.
+     */
+    static final double DENSE_FILL = 0.25;
+
+    /**
+     * The zeroth Fourier coefficient.
+     */
+    final double a0;
+
+    /**
+     * The degrees of the non-zero terms in increasing order, all at least one.
+     */
+    final int[] index;
+
+    /**
+     * The cosine coefficient of each term.
+     */
+    final double[] aj;
+
+    /**
+     * The sine coefficient of each term.
+     */
+    final double[] bj;
+
+    /**
+     * Constructor for the SparseFourierPolynomial class. The arrays are copied, so they may be changed afterwards
+     * without changing the Fourier polynomial.
+     *
+     * @param zeroCoefficient the zeroth Fourier coefficient.
+     * @param degrees the degrees of the terms in strictly increasing order, all at least one.
+     * @param aArray the cosine coefficient of each term.
+     * @param bArray the sine coefficient of each term.
+     * @throws IllegalArgumentException if the arrays have different lengths.
+     * @throws IllegalArgumentException if the degrees are not positive and strictly increasing.
+     */
+    public SparseFourierPolynomial (double zeroCoefficient, int[] degrees, double[] aArray, double[] bArray)
+    {
+        if (degrees.length != aArray.length || degrees.length != bArray.length)
+        {
+            throw new java.lang.IllegalArgumentException("degrees and coefficients must have the same length");
+        }
+        for (int i=0; i<degrees.length; i++)
+        {
+            if (degrees[i] < 1 || (i > 0 && degrees[i] <= degrees[i-1]))
+            {
+                throw new java.lang.IllegalArgumentException("degrees must be positive and strictly increasing");
+            }
+        }
+        a0 = zeroCoefficient;
+        index = degrees.clone();
+        aj = aArray.clone();
+        bj = bArray.clone();
+    }
+
+    /**
+     * Finds the sparse representation of a Fourier polynomial, leaving out the terms whose coefficients are both zero.
+     *
+     * @param f the Fourier polynomial.
+     * @return the same Fourier polynomial as a SparseFourierPolynomial object.
+     */
+    public static SparseFourierPolynomial fromDense (FourierPolynomial f)
+    {
+        int terms = 0;
+        for (int j=0; j<f.aj.length; j++)
+        {
+            if (f.aj[j] != 0.0 || f.bj[j] != 0.0)
+            {
+                terms++;
+            }
+        }
+        int[] degrees = new int[terms];
+        double[] a = new double[terms];
+        double[] b = new double[terms];
+        int t = 0;
+        for (int j=0; j<f.aj.length; j++)
+        {
+            if (f.aj[j] != 0.0 || f.bj[j] != 0.0)
+            {
+                degrees[t] = j+1;
+                a[t] = f.aj[j];
+                b[t] = f.bj[j];
+                t++;
+            }
+        }
+        return new SparseFourierPolynomial(f.a0, degrees, a, b);
+    }
+
+    /**
+     * Finds the dense representation of the Fourier polynomial.
+     *
+     * @return the same Fourier polynomial as a FourierPolynomial object.
+     */
+    public FourierPolynomial toDense ()
+    {
+        int n = getDegree();
+        double[] a = new double[n];
+        double[] b = new double[n];
+        for (int t=0; t<index.length; t++)
+        {
+            a[index[t]-1] = aj[t];
+            b[index[t]-1] = bj[t];
+        }
+        return new FourierPolynomial(a0, a, b);
+    }
+
+    /**
+     * Returns this Fourier polynomial, which is already sparse.
+     *
+     * @return this object.
+     */
+    public SparseFourierPolynomial toSparse ()
+    {
+        return this;
+    }
+
+    /**
+     * Chooses the representation of a Fourier polynomial using less memory: the sparse one if at most a quarter of its
+     * terms are non-zero, otherwise the dense one.
+     *
+     * @param f the Fourier polynomial.
+     * @return f itself, or the same Fourier polynomial as a SparseFourierPolynomial object.
+     */
+    public static TrigonometricPolynomial compact (FourierPolynomial f)
+    {
+        return f.compact();
+    }
+
+    /**
+     * Chooses the representation of this Fourier polynomial using less memory: this object if at most a quarter of its
+     * terms are non-zero, otherwise the dense representation.
+     *
+     * @return this object, or the same Fourier polynomial as a FourierPolynomial object.
+     */
+    public TrigonometricPolynomial compact ()
+    {
+        return fillRatio() <= DENSE_FILL ? this : toDense();
+    }
+
+    /**
+     * Returns the degree of the Fourier polynomial, which is the degree of its last non-zero term.
+     *
+     * @return the degree, or zero if there are no non-constant terms.
+     */
+    public int getDegree ()
+    {
+        return index.length == 0 ? 0 : index[index.length-1];
+    }
+
+    /**
+     * Returns the number of non-constant terms stored.
+     *
+     * @return the number of terms.
+     */
+    public int getTermCount ()
+    {
+        return index.length;
+    }
+
+    /**
+     * Returns the fraction of the degrees 1 to n which have a stored term, where n is the degree.
+     *
+     * @return the fill ratio, or zero if there are no non-constant terms.
+     */
+    public double fillRatio ()
+    {
+        return index.length == 0 ? 0.0 : index.length/(double) getDegree();
+    }
+
+    /**
+     * Returns the the jth coefficient of the Fourier polynomial.
+     *
+     * @param j the term of the coefficient.
+     * @param wantB determines whether to return the coefficient of the cosine or sine value.
+     * @return the jth coefficient.
+     * @throws IllegalArgumentException if j is negative.
+     */
+    public double getCoefficient (int j, boolean wantB)
+    {
+        if (j < 0)
+        {
+            throw new java.lang.IllegalArgumentException("j must be non-negative");
+        }
+        if (j == 0)
+        {
+            return a0;
+        }
+        int t = java.util.Arrays.binarySearch(index, j);
+        if (t < 0)
+        {
+            return 0.0;
+        }
+        return wantB ? bj[t] : aj[t];
+    }
+
+    /**
+     * Calculates the value of the Fourier polynomial at a point.
+     *
+     * @param x the point to consider.
+     * @return the value of the Fourier polynomial at the point x.
+     */
+    public double valueAt (double x)
+    {
+        double value = a0/2.0;
+        for (int t=0; t<index.length; t++)
+        {
+            double jx = index[t]*x;
+            value += aj[t]*Math.cos(jx) + bj[t]*Math.sin(jx);
+        }
+        return value;
+    }
+
+    /**
+     * Calculates the value of the Fourier polynomials derivative at a point.
+     *
+     * @param x the point to consider.
+     * @return the value of the Fourier polynomials derivative at the point x.
+     */
+    public double derivativeValueAt (double x)
+    {
+        double value = 0.0;
+        for (int t=0; t<index.length; t++)
+        {
+            double jx = index[t]*x;
+            value += index[t]*(bj[t]*Math.cos(jx) - aj[t]*Math.sin(jx));
+        }
+        return value;
+    }
+
+    /**
+     * Adds a Fourier polynomial in either representation. A sparse f is added by merging the two lists of terms, and
+     * a dense f by adding the terms to a dense copy of it.
+     *
+     * @param f the Fourier polynomial to add, which is not modified.
+     * @return the sum, sparse if at most a quarter of its degrees have a term and dense otherwise.
+     */
+    public TrigonometricPolynomial add (TrigonometricPolynomial f)
+    {
+        if (f instanceof SparseFourierPolynomial)
+        {
+            return sum((SparseFourierPolynomial) f).compact();
+        }
+        return f.toDense().add(toDense()).compact();
+    }
+
+    /**
+     * Adds a sparse Fourier polynomial by merging the two lists of terms.
+     */
+    private SparseFourierPolynomial sum (SparseFourierPolynomial f)
+    {
+        int[] degrees = new int[index.length + f.index.length];
+        double[] a = new double[degrees.length];
+        double[] b = new double[degrees.length];
+        int p = 0;
+        int q = 0;
+        int t = 0;
+        while (p < index.length || q < f.index.length)
+        {
+            if (q == f.index.length || (p < index.length && index[p] < f.index[q]))
+            {
+                degrees[t] = index[p];
+                a[t] = aj[p];
+                b[t] = bj[p];
+                p++;
+            }
+            else if (p == index.length || f.index[q] < index[p])
+            {
+                degrees[t] = f.index[q];
+                a[t] = f.aj[q];
+                b[t] = f.bj[q];
+                q++;
+            }
+            else
+            {
+                degrees[t] = index[p];
+                a[t] = aj[p] + f.aj[q];
+                b[t] = bj[p] + f.bj[q];
+                p++;
+                q++;
+            }
+            t++;
+        }
+        return new SparseFourierPolynomial(a0 + f.a0, java.util.Arrays.copyOf(degrees, t),
+                                           java.util.Arrays.copyOf(a, t), java.util.Arrays.copyOf(b, t));
+    }
+
+    /**
+     * Multiplies the Fourier polynomial with another given Fourier polynomial in either representation. Each pair of 
+     * terms of degrees p and q gives terms of degree p+q and |p-q|, so the product of polynomials with k and l terms 
+     * is found from kl pairs. When the polynomials are so full that the dense convolution is cheaper, they are 
+     * multiplied as FourierPolynomial objects instead.
+     *
+     * @param f the Fourier polynomial to multiply by, which is not modified.
+     * @return the product, sparse if at most a quarter of its degrees have a term and dense otherwise.
+     */
+    public TrigonometricPolynomial multiply (TrigonometricPolynomial f)
+    {
+        SparseFourierPolynomial s = f.toSparse();
+        long pairs = (long) index.length*s.index.length;
+        long n = (long) getDegree() + s.getDegree();
+        if (pairs > 8*n*(64 - Long.numberOfLeadingZeros(n)))
+        {
+            return toDense().multiply(f.toDense()).compact();
+        }
+        return product(s).compact();
+    }
+
+    /**
+     * Multiplies by a sparse Fourier polynomial term by term.
+     */
+    private SparseFourierPolynomial product (SparseFourierPolynomial f)
+    {
+
+        int capacity = 2*index.length*f.index.length + index.length + f.index.length;
+        int[] degrees = new int[capacity];
+        double[] a = new double[capacity];
+        double[] b = new double[capacity];
+        int t = 0;
+        double newA0 = a0*f.a0/2.0;
+
+        // Terms of one polynomial times the constant of the other.
+        for (int p=0; p<index.length; p++)
+        {
+            degrees[t] = index[p];
+            a[t] = f.a0*aj[p]/2.0;
+            b[t] = f.a0*bj[p]/2.0;
+            t++;
+        }
+        for (int q=0; q<f.index.length; q++)
+        {
+            degrees[t] = f.index[q];
+            a[t] = a0*f.aj[q]/2.0;
+            b[t] = a0*f.bj[q]/2.0;
+            t++;
+        }
+
+        for (int p=0; p<index.length; p++)
+        {
+            for (int q=0; q<f.index.length; q++)
+            {
+                double ap = aj[p];
+                double bp = bj[p];
+                double aq = f.aj[q];
+                double bq = f.bj[q];
+
+                degrees[t] = index[p] + f.index[q];
+                a[t] = (ap*aq - bp*bq)/2.0;
+                b[t] = (ap*bq + bp*aq)/2.0;
+                t++;
+
+                int difference = index[p] - f.index[q];
+                if (difference == 0)
+                {
+                    newA0 += ap*aq + bp*bq; // The constant term is half of a0.
+                }
+                else
+                {
+                    // sin((p-q)x) = -sin((q-p)x), so the sine coefficient changes sign for p < q.
+                    degrees[t] = Math.abs(difference);
+                    a[t] = (ap*aq + bp*bq)/2.0;
+                    b[t] = Integer.signum(difference)*(bp*aq - ap*bq)/2.0;
+                    t++;
+                }
+            }
+        }
+        return merge(newA0, degrees, a, b, t);
+    }
+
+    /**
+     * Sorts a list of terms by degree and adds together terms of the same degree, leaving out terms which are zero.
+     */
+    private static SparseFourierPolynomial merge (double a0, int[] degrees, double[] a, double[] b, int count)
+    {
+        // Sorts the positions by degree using the degree as the high half of a long.
+        long[] keys = new long[count];
+        for (int t=0; t<count; t++)
+        {
+            keys[t] = ((long) degrees[t] << 32) | t;
+        }
+        java.util.Arrays.sort(keys);
+
+        int[] newDegrees = new int[count];
+        double[] newA = new double[count];
+        double[] newB = new double[count];
+        int terms = 0;
+        int t = 0;
+        while (t < count)
+        {
+            int degree = (int) (keys[t] >>> 32);
+            double sumA = 0.0;
+            double sumB = 0.0;
+            while (t < count && (int) (keys[t] >>> 32) == degree)
+            {
+                int position = (int) keys[t];
+                sumA += a[position];
+                sumB += b[position];
+                t++;
+            }
+            if (sumA != 0.0 || sumB != 0.0)
+            {
+                newDegrees[terms] = degree;
+                newA[terms] = sumA;
+                newB[terms] = sumB;
+                terms++;
+            }
+        }
+        return new SparseFourierPolynomial(a0, java.util.Arrays.copyOf(newDegrees, terms),
+                                           java.util.Arrays.copyOf(newA, terms), java.util.Arrays.copyOf(newB, terms));
+    }
+
+    /**
+     * Finds the derivative of the Fourier polynomial.
+     *
+     * @return the coefficients of the derivative as a SparseFourierPolynomial object.
+     */
+    public SparseFourierPolynomial derivative ()
+    {
+        double[] a = new double[index.length];
+        double[] b = new double[index.length];
+        for (int t=0; t<index.length; t++)
+        {
+            a[t] = index[t]*bj[t];
+            b[t] = -index[t]*aj[t];
+        }
+        return new SparseFourierPolynomial(0, index, a, b);
+    }
+
+    /**
+     * Finds the antiderivative of the Fourier polynomial.
+     *
+     * @return the coefficients of the antiderivative as a SparseFourierPolynomial object.
+     * @throws IllegalArgumentException if |a0| > 10^(-10).
+     */
+    public SparseFourierPolynomial antiderivative ()
+    {
+        if (Math.abs(a0) > Math.pow(10,-10))
+        {
+            throw new java.lang.IllegalArgumentException("The antiderivative cannot be found for non-zero a0");
+        }
+        double[] a = new double[index.length];
+        double[] b = new double[index.length];
+        for (int t=0; t<index.length; t++)
+        {
+            a[t] = -bj[t]/index[t];
+            b[t] = aj[t]/index[t];
+        }
+        return new SparseFourierPolynomial(0, index, a, b);
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Keeps the Fourier coefficients of the last N samples of a stream up to date as samples arrive, for live signals
+ * where re-running FourierTransformer.approximate on every new window would cost O(nN) per sample.
+ *
+ * The window is treated as one period, with the oldest sample at x = 0 and the newest at x = 2π(N-1)/N, so the
+ * coefficients are the trapezium rule sums a_j = (2/N) Σ s_i cos(j x_i) and b_j = (2/N) Σ s_i sin(j x_i).
+ * Samples are kept in a circular buffer, and sample number t of the stream lives in slot t mod N. The transform is kept
+ * in terms of the slots, Y_k = Σ buffer[p] exp(-2πikp/N), so a new sample replaces the oldest in the same slot and
+ * each Y_k changes by the difference of the two times a fixed root of unity: a sliding DFT costing O(n) per sample.
+ * Only a snapshot rotates Y_k to the order of the window. As nothing is multiplied by a rotation at each step, the
+ * rounding errors only add up slowly, and every resync interval the transform is recalculated from the buffer with
+ * a real FFT so they cannot build up without bound.
+ *
+ * Until N samples have arrived the window starts with zeros in place of the missing samples, so the newest sample is
+ * always at x = 2π(N-1)/N. A StreamingTransformer is not thread-safe.
+ */
+public class StreamingTransformer
+{
+    /**
+     * The window length N.
+     */
+    final int length;
+
+    /**
+     * The degree of the coefficients kept.
+     */
+    final int n;
+
+    /**
+     * The number of samples between recalculations of the transform.
+     */
+    final int resyncInterval;
+
+    /**
+     * The circular buffer of the last N samples, with sample t in slot t mod N.
+     */
+    private final double[] buffer;
+
+    /**
+     * cos(2πp/N) and sin(2πp/N) for 0 <= p < N.
+     */
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * The real and imaginary parts of Y_k for 0 <= k <= n.
+     */
+    private final double[] re;
+    private final double[] im;
+
+    /**
+     * The transform used to resync, with its output buffers.
+     */
+    private final RealFFT fft;
+    private final double[] fftRe;
+    private final double[] fftIm;
+
+    /**
+     * The number of samples received.
+     */
+    private long count;
+
+    /**
+     * The number of samples received since the last resync.
+     */
+    private int sinceResync;
+
+    /**
+     * Constructor for the StreamingTransformer class which resyncs once per window length.
+     *
+     * @param windowLength the number of samples N in the window.
+     * @param degree the degree of the Fourier polynomials produced.
+     * @throws IllegalArgumentException if windowLength is not positive, or degree is negative or above windowLength/2.
+     */
+    public StreamingTransformer (int windowLength, int degree)
+    {
+        this(windowLength, degree, windowLength);
+    }
+
+    /**
+     * Constructor for the StreamingTransformer class.
+     *
+     * @param windowLength the number of samples N in the window.
+     * @param degree the degree of the Fourier polynomials produced.
+     * @param resyncInterval the number of samples between recalculations of the transform from the buffer.
+     * @throws IllegalArgumentException if windowLength or resyncInterval is not positive.
+     * @throws IllegalArgumentException if degree is negative or above windowLength/2.
+     */
+    public StreamingTransformer (int windowLength, int degree, int resyncInterval)
+    {
+        if (windowLength < 1)
+        {
+            throw new java.lang.IllegalArgumentException("the window length must be positive");
+        }
+        if (degree < 0 || degree > windowLength/2)
+        {
+            throw new java.lang.IllegalArgumentException("n must be between 0 and half the window length");
+        }
+        if (resyncInterval < 1)
+        {
+            throw new java.lang.IllegalArgumentException("the resync interval must be positive");
+        }
+        length = windowLength;
+        n = degree;
+        this.resyncInterval = resyncInterval;
+
+        buffer = new double[length];
+        cos = new double[length];
+        sin = new double[length];
+        for (int p=0; p<length; p++)
+        {
+            cos[p] = Math.cos(2.0*Math.PI*p/length);
+            sin[p] = Math.sin(2.0*Math.PI*p/length);
+        }
+        re = new double[n+1];
+        im = new double[n+1];
+        fft = TableCache.realFFT(length);
+        fftRe = new double[length/2+1];
+        fftIm = new double[length/2+1];
+    }
+
+    /**
+     * Adds a sample to the end of the window, dropping the oldest once the window is full.
+     *
+     * @param sample the new sample.
+     */
+    public void add (double sample)
+    {
+        int p = (int) (count % length);
+        double change = sample - buffer[p];
+        buffer[p] = sample;
+        count++;
+
+        // Y_k changes by change*exp(-2πikp/N); the index kp mod N is stepped rather than multiplied.
+        re[0] += change;
+        for (int k=1, index=p; k<=n; k++)
+        {
+            re[k] += change*cos[index];
+            im[k] -= change*sin[index];
+            index += p;
+            if (index >= length)
+            {
+                index -= length;
+            }
+        }
+
+        if (++sinceResync >= resyncInterval)
+        {
+            resync();
+        }
+    }
+
+    /**
+     * Adds a run of samples in order.
+     *
+     * @param samples the array holding the samples.
+     * @param offset the index of the first sample to add.
+     * @param number the number of samples to add.
+     */
+    public void addAll (double[] samples, int offset, int number)
+    {
+        for (int i=offset; i<offset+number; i++)
+        {
+            add(samples[i]);
+        }
+    }
+
+    /**
+     * Recalculates the transform from the samples in the buffer, discarding the rounding errors built up by the
+     * updates since the last resync. This is done automatically every resync interval.
+     */
+    public void resync ()
+    {
+        fft.forward(buffer, fftRe, fftIm);
+        System.arraycopy(fftRe, 0, re, 0, n+1);
+        System.arraycopy(fftIm, 0, im, 0, n+1);
+        sinceResync = 0;
+    }
+
+    /**
+     * Returns the number of samples received.
+     *
+     * @return the number of samples.
+     */
+    public long getSampleCount ()
+    {
+        return count;
+    }
+
+    /**
+     * Returns whether a whole window of samples has been received.
+     *
+     * @return true if at least N samples have been received.
+     */
+    public boolean isFull ()
+    {
+        return count >= length;
+    }
+
+    /**
+     * Returns the Fourier polynomial of the current window. Only the n+1 transform values are used, so the buffer is
+     * not copied and the cost is O(n).
+     *
+     * @return a FourierPolynomial of degree n approximating the window as one period on [0,2π].
+     */
+    public FourierPolynomial snapshot ()
+    {
+        // The window starts with sample t0 = count-N, in slot t0 mod N, so its transform is X_k = Y_k exp(2πik t0/N).
+        int oldest = (int) (count % length);
+        double scale = 2.0/length;
+        double[] aj = new double[n];
+        double[] bj = new double[n];
+        for (int k=1, index=oldest; k<=n; k++)
+        {
+            double xr = re[k]*cos[index] - im[k]*sin[index];
+            double xi = re[k]*sin[index] + im[k]*cos[index];
+            aj[k-1] = scale*xr;
+            bj[k-1] = -scale*xi;
+            index += oldest;
+            if (index >= length)
+            {
+                index -= length;
+            }
+        }
+        return new FourierPolynomial(scale*re[0], aj, bj);
+    }
+}
@@ -0,0 +1,393 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of the tables which the transforms and solvers would otherwise recalculate on every call:
+ * FFT and RealFFT twiddle tables for each length, the sample points i*2π/subInt for each number of subintervals, and
+ * the decay factors exp(-αj²t) for each diffusivity, degree and time. The same lengths and times recur constantly in
+ * typical use, so most requests are answered from the cache. Times often do not recur, for example when a solution is
+ * evaluated at many different times, so the decay factors of a time are only kept once it has been asked for twice;
+ * until then they are calculated for the caller alone and do not push shared tables out of the cache.
+ *
+ * The cache is bounded by a memory budget. When it is over budget the least recently used tables are evicted, and a
+ * single table larger than the budget is calculated but not kept. Transforms are handed out as copies which share the
+ * cached tables but have their own scratch space, so each caller may use its copy freely. Arrays are shared and must
+ * not be modified. All methods are thread-safe.
+ */
+public class TableCache
+{
+    /**
+     * The memory budget used until another is set, 64 MB.
+     */
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    /**
+     * The kinds of table.
+     */
+    private static final int FFT_TABLE = 0;
+    private static final int REAL_FFT_TABLE = 1;
+    private static final int NODES = 2;
+    private static final int DECAY = 3;
+
+    /**
+     * The number of decay tables remembered as asked for once.
+     */
+    private static final int RECENT_DECAY = 64;
+
+    /**
+     * Guards all the fields below.
+     */
+    private static final Object lock = new Object();
+
+    /**
+     * The cached tables in order of use, least recently used first.
+     */
+    private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * The decay tables most recently asked for once but not kept, which are kept if asked for again.
+     */
+    @SuppressWarnings("serial")
+    private static final LinkedHashMap<Key, Boolean> recentDecay = new LinkedHashMap<Key, Boolean>(16, 0.75f, true)
+    {
+        protected boolean removeEldestEntry (Map.Entry<Key, Boolean> eldest)
+        {
+            return size() > RECENT_DECAY;
+        }
+    };
+
+    private static long budget = DEFAULT_BUDGET;
+    private static long used;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    /**
+     * Returns a FFT of the given length whose tables come from the cache.
+     *
+     * @param length the length of the sequences to be transformed.
+     * @return a transform for the caller's own use.
+     * @throws IllegalArgumentException if length is not positive.
+     */
+    static FFT fft (int length)
+    {
+        Key key = new Key(FFT_TABLE, length, 0.0, 0.0);
+        FFT shared = (FFT) get(key);
+        if (shared == null)
+        {
+            shared = new FFT(length);
+            put(key, shared, shared.tableBytes());
+        }
+        return shared.copy();
+    }
+
+    /**
+     * Returns a RealFFT of the given length whose tables come from the cache.
+     *
+     * @param length the length of the sequences to be transformed.
+     * @return a transform for the caller's own use.
+     * @throws IllegalArgumentException if length is not positive.
+     */
+    static RealFFT realFFT (int length)
+    {
+        Key key = new Key(REAL_FFT_TABLE, length, 0.0, 0.0);
+        RealFFT shared = (RealFFT) get(key);
+        if (shared == null)
+        {
+            shared = new RealFFT(length);
+            put(key, shared, shared.tableBytes());
+        }
+        return shared.copy();
+    }
+
+    /**
+     * Returns the sample points i*2π/subInt for 0 <= i < subInt.
+     *
+     * @param subInt the number of subintervals.
+     * @return the points, which must not be modified.
+     */
+    static double[] nodes (int subInt)
+    {
+        Key key = new Key(NODES, subInt, 0.0, 0.0);
+        double[] nodes = (double[]) get(key);
+        if (nodes == null)
+        {
+            double h = (2.0*Math.PI)/ (double) subInt;
+            nodes = new double[subInt];
+            for (int i=0; i<subInt; i++)
+            {
+                nodes[i] = i*h;
+            }
+            put(key, nodes, 8L*subInt);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the decay factors exp(-αj²t) for 1 <= j <= n, stored at index j-1. They are kept in the cache from the
+     * second time they are asked for.
+     *
+     * @param alpha the diffusivity.
+     * @param n the degree.
+     * @param t the time.
+     * @return the factors, which must not be modified.
+     */
+    static double[] decay (double alpha, int n, double t)
+    {
+        Key key = new Key(DECAY, n, alpha, t);
+        double[] factors = (double[]) get(key);
+        if (factors == null)
+        {
+            factors = new double[n];
+            for (int j=1; j<=n; j++)
+            {
+                factors[j-1] = Math.exp(-alpha*j*j*t);
+            }
+            if (repeated(key))
+            {
+                put(key, factors, 8L*n);
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * Looks up a table, counting a hit or a miss.
+     */
+    private static Object get (Key key)
+    {
+        synchronized (lock)
+        {
+            Entry entry = entries.get(key);
+            if (entry == null)
+            {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.value;
+        }
+    }
+
+    /**
+     * Returns whether a decay table was recently asked for and not kept, remembering it if not.
+     */
+    private static boolean repeated (Key key)
+    {
+        synchronized (lock)
+        {
+            return recentDecay.put(key, Boolean.TRUE) != null;
+        }
+    }
+
+    /**
+     * Adds a table calculated after a miss. The table is calculated outside the lock, so two threads may both
+     * calculate it; the second simply replaces the first.
+     */
+    private static void put (Key key, Object value, long bytes)
+    {
+        synchronized (lock)
+        {
+            if (bytes > budget)
+            {
+                return;
+            }
+            Entry old = entries.put(key, new Entry(value, bytes));
+            if (old != null)
+            {
+                used -= old.bytes;
+            }
+            used += bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used tables until the cache is within its budget. Called holding the lock.
+     */
+    private static void evict ()
+    {
+        Iterator<Map.Entry<Key, Entry>> i = entries.entrySet().iterator();
+        while (used > budget && i.hasNext())
+        {
+            used -= i.next().getValue().bytes;
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Sets the memory budget, evicting tables if the cache is now over it.
+     *
+     * @param bytes the largest number of bytes the cached tables may take up.
+     * @throws IllegalArgumentException if bytes is negative.
+     */
+    public static void setMemoryBudget (long bytes)
+    {
+        if (bytes < 0)
+        {
+            throw new java.lang.IllegalArgumentException("the budget cannot be negative");
+        }
+        synchronized (lock)
+        {
+            budget = bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Returns the memory budget.
+     *
+     * @return the largest number of bytes the cached tables may take up.
+     */
+    public static long getMemoryBudget ()
+    {
+        synchronized (lock)
+        {
+            return budget;
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes taken up by the cached tables.
+     *
+     * @return the number of bytes used.
+     */
+    public static long getMemoryUsed ()
+    {
+        synchronized (lock)
+        {
+            return used;
+        }
+    }
+
+    /**
+     * Returns the number of tables in the cache.
+     *
+     * @return the number of tables.
+     */
+    public static int size ()
+    {
+        synchronized (lock)
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests answered from the cache.
+     *
+     * @return the number of hits.
+     */
+    public static long getHits ()
+    {
+        synchronized (lock)
+        {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of requests which had to calculate their table.
+     *
+     * @return the number of misses.
+     */
+    public static long getMisses ()
+    {
+        synchronized (lock)
+        {
+            return misses;
+        }
+    }
+
+    /**
+     * Returns the number of tables evicted to keep within the budget.
+     *
+     * @return the number of evictions.
+     */
+    public static long getEvictions ()
+    {
+        synchronized (lock)
+        {
+            return evictions;
+        }
+    }
+
+    /**
+     * Removes every table from the cache. The statistics are kept.
+     */
+    public static void clear ()
+    {
+        synchronized (lock)
+        {
+            entries.clear();
+            recentDecay.clear();
+            used = 0;
+        }
+    }
+
+    /**
+     * Sets the hit, miss and eviction counts back to zero.
+     */
+    public static void resetStatistics ()
+    {
+        synchronized (lock)
+        {
+            hits = 0;
+            misses = 0;
+            evictions = 0;
+        }
+    }
+
+    /**
+     * The parameters identifying a table. Doubles are compared by their bits, so the same time always finds the same
+     * table.
+     */
+    private static final class Key
+    {
+        final int kind;
+        final int n;
+        final long x;
+        final long y;
+
+        Key (int kind, int n, double x, double y)
+        {
+            this.kind = kind;
+            this.n = n;
+            this.x = Double.doubleToLongBits(x);
+            this.y = Double.doubleToLongBits(y);
+        }
+
+        public boolean equals (Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key k = (Key) o;
+            return kind == k.kind && n == k.n && x == k.x && y == k.y;
+        }
+
+        public int hashCode ()
+        {
+            long h = 31L*(31L*(31L*kind + n) + x) + y;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * A cached table with its size.
+     */
+    private static final class Entry
+    {
+        final Object value;
+        final long bytes;
+
+        Entry (Object value, long bytes)
+        {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings for the FourierTransformer class which also holds the buffers reused between transforms
+ * and reports how many times the approximated function was evaluated.
+ *
+ * A TransformOptions object holds scratch space so it should not be shared between threads.
+ */
+public class TransformOptions
+{
+    /**
+     * The number of subintervals used by the composite trapezium rule.
+     */
+    private int subInt;
+
+    /**
+     * The pool used to sample and transform in parallel, or null to work on the calling thread.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The number of evaluations of the approximated function made by the last transform.
+     */
+    private long evaluations;
+
+    /**
+     * The estimated error of the last adaptive transform, or NaN if the last transform was not adaptive.
+     */
+    private double errorEstimate = Double.NaN;
+
+    /**
+     * The buffer which the approximated function is sampled into.
+     */
+    private double[] samples = new double[0];
+
+    /**
+     * The points i*h for 0 <= i < subInt at which the function is sampled, or an empty array before they are needed.
+     */
+    private double[] nodes = new double[0];
+
+    /**
+     * Buffers for the points at which the function is sampled, other than the nodes, and the values found there.
+     */
+    private double[] points = new double[0];
+    private double[] values = new double[0];
+
+    /**
+     * Buffers for the real and imaginary parts of the transformed samples.
+     */
+    private double[] re = new double[0];
+    private double[] im = new double[0];
+
+    /**
+     * The transform used for the last number of subintervals.
+     */
+    private RealFFT fft;
+
+    /**
+     * Constructor for the TransformOptions class using 10,000 subintervals.
+     */
+    public TransformOptions ()
+    {
+        this(10000);
+    }
+
+    /**
+     * Constructor for the TransformOptions class.
+     *
+     * @param subintervals the number of subintervals used by the composite trapezium rule.
+     * @throws IllegalArgumentException if subintervals is not positive.
+     */
+    public TransformOptions (int subintervals)
+    {
+        setSubintervals(subintervals);
+    }
+
+    /**
+     * Returns the number of subintervals used by the composite trapezium rule.
+     *
+     * @return the number of subintervals.
+     */
+    public int getSubintervals ()
+    {
+        return subInt;
+    }
+
+    /**
+     * Sets the number of subintervals used by the composite trapezium rule.
+     * To avoid aliasing this should be greater than twice the degree of the approximation.
+     *
+     * @param subintervals the number of subintervals.
+     * @return this TransformOptions object.
+     * @throws IllegalArgumentException if subintervals is not positive.
+     */
+    public TransformOptions setSubintervals (int subintervals)
+    {
+        if (subintervals < 1)
+        {
+            throw new java.lang.IllegalArgumentException("subintervals must be positive");
+        }
+        subInt = subintervals;
+        return this;
+    }
+
+    /**
+     * Returns the pool used to sample and transform in parallel.
+     *
+     * @return the pool, or null if transforms run on the calling thread.
+     */
+    public ForkJoinPool getPool ()
+    {
+        return pool;
+    }
+
+    /**
+     * Sets the pool used to sample and transform in parallel, for example ForkJoinPool.commonPool().
+     * The approximated function is then evaluated from several threads at once, so it must be safe to do so.
+     * The coefficients found are identical to those found without a pool, whatever the number of threads.
+     *
+     * @param parallelPool the pool to use, or null to work on the calling thread.
+     * @return this TransformOptions object.
+     */
+    public TransformOptions setPool (ForkJoinPool parallelPool)
+    {
+        pool = parallelPool;
+        return this;
+    }
+
+    /**
+     * Returns the number of times the approximated function was evaluated by the last transform using these options.
+     *
+     * @return the number of function evaluations.
+     */
+    public long getEvaluationCount ()
+    {
+        return evaluations;
+    }
+
+    /**
+     * Returns an estimate of the largest error of the last adaptive transform using these options. What it measures
+     * depends on which transform was adaptive:
+     * after FourierTransformer.approximateToTolerance, which chooses the degree, it is the sum of the amplitudes of 
+     * the terms left out, or infinity if the terms were still above the tolerance at the Nyquist frequency;
+     * after FourierTransformer.approximateAdaptiveResolution, which chooses the number of subintervals, it is the 
+     * change |Δa0|/2 + Σ (|Δa_j| + |Δb_j|) between the last two grids, an estimate of the quadrature error of the 
+     * coarser of them.
+     *
+     * @return the error estimate, or NaN if the last transform was not adaptive.
+     */
+    public double getErrorEstimate ()
+    {
+        return errorEstimate;
+    }
+
+    /**
+     * Records the error estimate of a transform.
+     */
+    void setErrorEstimate (double estimate)
+    {
+        errorEstimate = estimate;
+    }
+
+    /**
+     * Records the number of function evaluations made by a transform.
+     */
+    void setEvaluationCount (long count)
+    {
+        evaluations = count;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for samples, reusing the previous buffer where possible.
+     */
+    double[] sampleBuffer (int length)
+    {
+        if (samples.length < length)
+        {
+            samples = new double[length];
+        }
+        return samples;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for samples, keeping the first keep samples of the previous buffer.
+     * A new buffer is at least twice the length of the old, so that a buffer which is repeatedly doubled is only
+     * copied a few times.
+     */
+    double[] sampleBuffer (int length, int keep)
+    {
+        if (samples.length < length)
+        {
+            double[] larger = new double[Math.max(length, 2*samples.length)];
+            System.arraycopy(samples, 0, larger, 0, keep);
+            samples = larger;
+        }
+        return samples;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for points to sample at.
+     */
+    double[] pointBuffer (int length)
+    {
+        if (points.length < length)
+        {
+            points = new double[length];
+        }
+        return points;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for the values at the points of pointBuffer.
+     */
+    double[] valueBuffer (int length)
+    {
+        if (values.length < length)
+        {
+            values = new double[length];
+        }
+        return values;
+    }
+
+    /**
+     * Returns the sample points i*2π/subInt for 0 <= i < subInt, looking them up in the TableCache only when subInt changes.
+     */
+    double[] nodes (int subInt)
+    {
+        if (nodes.length != subInt)
+        {
+            nodes = TableCache.nodes(subInt);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for the real parts of the transform.
+     */
+    double[] realBuffer (int length)
+    {
+        if (re.length < length)
+        {
+            re = new double[length];
+        }
+        return re;
+    }
+
+    /**
+     * Returns a buffer of at least the given length for the imaginary parts of the transform.
+     */
+    double[] imaginaryBuffer (int length)
+    {
+        if (im.length < length)
+        {
+            im = new double[length];
+        }
+        return im;
+    }
+
+    /**
+     * Returns a real transform of the given length, reusing the previous transform if it has the same length.
+     */
+    RealFFT transform (int length)
+    {
+        if (fft == null || fft.n != length)
+        {
+            fft = TableCache.realFFT(length);
+        }
+        return fft;
+    }
+}
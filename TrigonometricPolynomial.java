@@ -0,0 +1,103 @@
+/**
+ * A Fourier polynomial in either of its representations: the dense FourierPolynomial, which stores every degree, or
+ * the SparseFourierPolynomial, which stores only the non-zero terms. Sums and products taken through this interface
+ * accept either representation and return whichever suits the result, chosen from its fill ratio, so code written
+ * against it can leave the choice to the operations.
+ *
+ * @see FourierPolynomial
+ * @see SparseFourierPolynomial
+ */
+public interface TrigonometricPolynomial
+{
+    /**
+     * Calculates the value of the Fourier polynomial at a point.
+     *
+     * @param x the point to consider.
+     * @return the value at x.
+     */
+    double valueAt (double x);
+
+    /**
+     * Calculates the value of the derivative of the Fourier polynomial at a point.
+     *
+     * @param x the point to consider.
+     * @return the value of the derivative at x.
+     */
+    double derivativeValueAt (double x);
+
+    /**
+     * Returns the jth coefficient of the Fourier polynomial.
+     *
+     * @param j the term of the coefficient.
+     * @param wantB determines whether to return the coefficient of the cosine or sine value.
+     * @return the jth coefficient.
+     * @throws IllegalArgumentException if j is negative.
+     */
+    double getCoefficient (int j, boolean wantB);
+
+    /**
+     * Returns the degree of the Fourier polynomial.
+     *
+     * @return the degree.
+     */
+    int getDegree ();
+
+    /**
+     * Returns the fraction of the degrees 1 to n which have a non-zero term, where n is the degree.
+     *
+     * @return the fill ratio, or zero if there are no non-constant terms.
+     */
+    double fillRatio ();
+
+    /**
+     * Adds a Fourier polynomial in either representation. Neither polynomial is modified.
+     *
+     * @param f the Fourier polynomial to add.
+     * @return the sum, sparse if at most a quarter of its degrees have a term and dense otherwise.
+     */
+    TrigonometricPolynomial add (TrigonometricPolynomial f);
+
+    /**
+     * Multiplies by a Fourier polynomial in either representation. Neither polynomial is modified.
+     *
+     * @param f the Fourier polynomial to multiply by.
+     * @return the product, sparse if at most a quarter of its degrees have a term and dense otherwise.
+     */
+    TrigonometricPolynomial multiply (TrigonometricPolynomial f);
+
+    /**
+     * Finds the derivative of the Fourier polynomial, which has the same terms and so the same representation.
+     *
+     * @return the derivative.
+     */
+    TrigonometricPolynomial derivative ();
+
+    /**
+     * Finds the antiderivative of the Fourier polynomial, which has the same terms and so the same representation.
+     *
+     * @return the antiderivative.
+     * @throws IllegalArgumentException if |a0| > 10^(-10).
+     */
+    TrigonometricPolynomial antiderivative ();
+
+    /**
+     * Chooses the representation using less memory: sparse if at most a quarter of the degrees have a term, otherwise dense.
+     *
+     * @return this object, or the same Fourier polynomial in the other representation.
+     */
+    TrigonometricPolynomial compact ();
+
+    /**
+     * Returns the Fourier polynomial in the dense representation.
+     *
+     * @return this object if it is dense, or a new FourierPolynomial object.
+     */
+    FourierPolynomial toDense ();
+
+    /**
+     * Returns the Fourier polynomial in the sparse representation.
+     *
+     * @return this object if it is sparse, or a new SparseFourierPolynomial object.
+     */
+    SparseFourierPolynomial toSparse ();
+}
@@ -0,0 +1,138 @@
+package vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels of Kernels which HotSpot C2 does not vectorise by itself, written with the incubating Vector API using
+ * the widest vectors of the machine. Each method does the same arithmetic in the same order as the scalar loop it
+ * replaces, without fused multiply-adds, so the results are identical whichever is used. The last few entries which
+ * do not fill a vector are done by a scalar loop.
+ *
+ * This class is not part of the BlueJ project and is compiled on its own, since it needs the incubator module:
+ *
+ *     javac --add-modules jdk.incubator.vector -d (classes) vector/VectorKernels.java
+ *
+ * Kernels finds it by reflection when the program is run with --add-modules jdk.incubator.vector and it is on the
+ * class path, and otherwise uses its scalar loops.
+ */
+public final class VectorKernels
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * The lane numbers 1, 2, ..., SPECIES.length().
+     */
+    private static final double[] LANES = new double[SPECIES.length()];
+
+    static
+    {
+        for (int i=0; i<LANES.length; i++)
+        {
+            LANES[i] = i+1;
+        }
+    }
+
+    private VectorKernels ()
+    {
+    }
+
+    /**
+     * Returns the number of doubles in each vector.
+     */
+    public static int lanes ()
+    {
+        return SPECIES.length();
+    }
+
+    public static void multiplyByIndex (double[] src, double[] dst, double factor, int length)
+    {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector index = DoubleVector.fromArray(SPECIES, LANES, 0);
+        DoubleVector step = DoubleVector.broadcast(SPECIES, SPECIES.length());
+        int i = 0;
+        for (; i<bound; i+=SPECIES.length())
+        {
+            index.mul(factor).mul(DoubleVector.fromArray(SPECIES, src, i)).intoArray(dst, i);
+            index = index.add(step);
+        }
+        for (; i<length; i++)
+        {
+            dst[i] = factor*(double) (i+1)*src[i];
+        }
+    }
+
+    public static void divideByIndex (double[] src, double[] dst, double factor, int length)
+    {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector index = DoubleVector.fromArray(SPECIES, LANES, 0);
+        DoubleVector step = DoubleVector.broadcast(SPECIES, SPECIES.length());
+        int i = 0;
+        for (; i<bound; i+=SPECIES.length())
+        {
+            DoubleVector.fromArray(SPECIES, src, i).mul(factor).div(index).intoArray(dst, i);
+            index = index.add(step);
+        }
+        for (; i<length; i++)
+        {
+            dst[i] = factor*src[i]/(double) (i+1);
+        }
+    }
+
+    public static void recurrenceStep (double a, double b, double[] kappa, double[] sigma,
+                                       double[] uA, double[] dA, double[] uB, double[] dB, int size)
+    {
+        int bound = SPECIES.loopBound(size);
+        int i = 0;
+        for (; i<bound; i+=SPECIES.length())
+        {
+            DoubleVector k = DoubleVector.fromArray(SPECIES, kappa, i);
+            DoubleVector s = DoubleVector.fromArray(SPECIES, sigma, i);
+            DoubleVector u = DoubleVector.fromArray(SPECIES, uA, i);
+            DoubleVector d = k.mul(u).add(a).add(s.mul(DoubleVector.fromArray(SPECIES, dA, i)));
+            d.intoArray(dA, i);
+            s.mul(u).add(d).intoArray(uA, i);
+            u = DoubleVector.fromArray(SPECIES, uB, i);
+            d = k.mul(u).add(b).add(s.mul(DoubleVector.fromArray(SPECIES, dB, i)));
+            d.intoArray(dB, i);
+            s.mul(u).add(d).intoArray(uB, i);
+        }
+        for (; i<size; i++)
+        {
+            dA[i] = a + kappa[i]*uA[i] + sigma[i]*dA[i];
+            uA[i] = sigma[i]*uA[i] + dA[i];
+            dB[i] = b + kappa[i]*uB[i] + sigma[i]*dB[i];
+            uB[i] = sigma[i]*uB[i] + dB[i];
+        }
+    }
+
+    public static void butterflies (double[] re, double[] im, int p, int q, double[] wr, double[] wi, int w, int count)
+    {
+        int bound = SPECIES.loopBound(count);
+        int k = 0;
+        for (; k<bound; k+=SPECIES.length())
+        {
+            DoubleVector xr = DoubleVector.fromArray(SPECIES, re, q+k);
+            DoubleVector xi = DoubleVector.fromArray(SPECIES, im, q+k);
+            DoubleVector cr = DoubleVector.fromArray(SPECIES, wr, w+k);
+            DoubleVector ci = DoubleVector.fromArray(SPECIES, wi, w+k);
+            DoubleVector tr = xr.mul(cr).sub(xi.mul(ci));
+            DoubleVector ti = xr.mul(ci).add(xi.mul(cr));
+            DoubleVector yr = DoubleVector.fromArray(SPECIES, re, p+k);
+            DoubleVector yi = DoubleVector.fromArray(SPECIES, im, p+k);
+            yr.sub(tr).intoArray(re, q+k);
+            yi.sub(ti).intoArray(im, q+k);
+            yr.add(tr).intoArray(re, p+k);
+            yi.add(ti).intoArray(im, p+k);
+        }
+        for (; k<count; k++)
+        {
+            double tr = re[q+k]*wr[w+k] - im[q+k]*wi[w+k];
+            double ti = re[q+k]*wi[w+k] + im[q+k]*wr[w+k];
+            re[q+k] = re[p+k] - tr;
+            im[q+k] = im[p+k] - ti;
+            re[p+k] += tr;
+            im[p+k] += ti;
+        }
+    }
+}